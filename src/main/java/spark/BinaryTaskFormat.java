@@ -0,0 +1,212 @@
+package spark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * Encodes and decodes task lists in the compact binary save format.
+ * <p>
+ * Layout: a 4-byte magic {@code "SPK\0"}, a version byte, the snapshot generation as a long, the
+ * next task ID as a long and the task count as an int, followed by one record per task:
+ * <ul>
+ *   <li>a type tag byte ({@code T}, {@code D} or {@code E}), a done flag byte and the task ID as a long,</li>
+ *   <li>the description as an int length followed by its UTF-8 bytes,</li>
+ *   <li>for deadlines, the due date/time as epoch seconds (UTC, no zone conversion),</li>
+ *   <li>for events, the from and to strings, each length-prefixed like the description.</li>
+ * </ul>
+ * The magic begins with bytes that can never start a text save file, so both formats can be
+ * told apart by their first bytes. Version 1 files, written before tasks had IDs, have neither the
+ * next task ID nor the per-task IDs, and are still read.
+ */
+public class BinaryTaskFormat {
+    private static final byte[] MAGIC = { 'S', 'P', 'K', 0 };
+    private static final byte VERSION = 2;
+    private static final byte VERSION_WITHOUT_IDS = 1;
+
+    /**
+     * Checks whether the file at the given path starts with the binary format magic.
+     *
+     * @param path The save file to check.
+     * @return {@code true} if the file is in the binary format.
+     * @throws IOException If the file cannot be read.
+     */
+    public static boolean isBinary(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return Arrays.equals(in.readNBytes(MAGIC.length), MAGIC);
+        }
+    }
+
+    /**
+     * Checks whether the buffer starts with the binary format magic, without moving its position.
+     *
+     * @param buffer The save file contents.
+     * @return {@code true} if the contents are in the binary format.
+     */
+    public static boolean isBinary(ByteBuffer buffer) {
+        if (buffer.remaining() < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buffer.get(buffer.position() + i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes tasks as binary records.
+     */
+    public static class Encoder extends TaskEncoder {
+        private long pendingId = 0;
+
+        @Override
+        protected void writeHeader(int taskCount, long generation, long nextId) {
+            putBytes(MAGIC);
+            putByte(VERSION);
+            putLong(generation);
+            putLong(nextId);
+            putInt(taskCount);
+        }
+
+        @Override
+        public void writeId(long id) {
+            // Written after the tag and done flag, see beginTask.
+            pendingId = id;
+        }
+
+        @Override
+        public void beginTask(char typeTag, boolean isDone) {
+            putByte(typeTag);
+            putByte(isDone ? 1 : 0);
+            putLong(pendingId);
+        }
+
+        @Override
+        public void writeString(String value) {
+            // The length is only known once the string is encoded, so fill it in afterwards.
+            int lengthIndex = position();
+            putInt(0);
+            putUtf8(value);
+            putIntAt(lengthIndex, position() - lengthIndex - Integer.BYTES);
+        }
+
+        @Override
+        public void writeDateTime(LocalDateTime value) {
+            putLong(value.toEpochSecond(ZoneOffset.UTC));
+        }
+
+        @Override
+        public void endTask() {
+        }
+    }
+
+    /**
+     * Encodes the tasks into the binary format.
+     *
+     * @param tasks The tasks to encode.
+     * @param generation The snapshot generation to store in the header.
+     * @return The encoded bytes.
+     */
+    public static byte[] encode(TaskList tasks, long generation) {
+        ByteBuffer encoded = new Encoder().encodeSnapshot(tasks, generation);
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Decodes a binary save file and appends its tasks to the given list.
+     *
+     * @param buffer The file contents, positioned at the magic.
+     * @param tasks The task list to add the decoded tasks to.
+     * @return The snapshot generation stored in the header.
+     * @throws SparkException If the data is truncated, has an unknown version, or contains an unknown
+     * task type or a date/time out of range.
+     */
+    public static long decode(ByteBuffer buffer, TaskList tasks) throws SparkException {
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new SparkException("Saved file was corrupted");
+            }
+            byte version = buffer.get();
+            if (version != VERSION && version != VERSION_WITHOUT_IDS) {
+                throw new SparkException("Unsupported save file version: " + version);
+            }
+            boolean hasIds = version == VERSION;
+
+            long generation = buffer.getLong();
+            if (hasIds) {
+                tasks.reserveIds(buffer.getLong());
+            }
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                tasks.addTask(readTask(buffer, hasIds));
+            }
+            return generation;
+
+        } catch (BufferUnderflowException | IllegalArgumentException | DateTimeException e) {
+            throw new SparkException("Saved file was corrupted");
+        }
+    }
+
+    private static Task readTask(ByteBuffer buffer, boolean hasIds) throws SparkException {
+        char taskType = (char) buffer.get();
+        boolean isDone = buffer.get() == 1;
+        long id = hasIds ? buffer.getLong() : 0;
+        String description = readString(buffer);
+
+        Task task;
+        switch (taskType) {
+        case 'T':
+            task = new Todo(description);
+            break;
+
+        case 'D':
+            task = new Deadline(description, LocalDateTime.ofEpochSecond(buffer.getLong(), 0, ZoneOffset.UTC));
+            break;
+
+        case 'E':
+            String from = readString(buffer);
+            String to = readString(buffer);
+            task = new Event(description, from, to);
+            break;
+
+        default:
+            throw new SparkException("Unknown task type in save data: " + taskType);
+        }
+
+        if (isDone) {
+            task.markAsDone();
+        }
+        task.setId(id);
+        return task;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        if (!buffer.hasArray()) {
+            byte[] utf8 = new byte[length];
+            buffer.get(utf8);
+            return new String(utf8, StandardCharsets.UTF_8);
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,522 @@
+package spark;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A {@link TaskList} that stores its tasks column by column instead of as one object per task.
+ * <p>
+ * Type tags are kept in a {@code byte[]}, done flags in a {@link BitSet}, IDs and deadlines (as epoch
+ * seconds, UTC) in {@code long[]}s, and all text in one UTF-8 byte arena, with each task's strings
+ * stored next to each other. {@link #find} and {@link #sortByDateTime} run over these arrays without
+ * creating any tasks.
+ * <p>
+ * {@link #getTask} creates a new {@link Task} holding a copy of the row each time it is called, so
+ * changes must be made through the list (e.g. {@link #mark}) rather than on the returned task.
+ * Deleting a task shifts the rows after it, so this list suits large lists that are mostly read.
+ */
+public class ColumnarTaskList extends TaskList {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int INITIAL_ARENA_BYTES = 1024;
+
+    // Whether String.toLowerCase lower-cases ASCII letters to ASCII letters, so that ASCII text can
+    // be matched byte by byte. Not the case in e.g. the Turkish locale.
+    private static final boolean HAS_ASCII_LOWER_CASE =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZ".toLowerCase().equals("abcdefghijklmnopqrstuvwxyz");
+
+    private int size = 0;
+    private byte[] types = new byte[INITIAL_CAPACITY];
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private long[] deadlines = new long[INITIAL_CAPACITY];
+    private int[] textStarts = new int[INITIAL_CAPACITY];
+    private int[] descriptionLengths = new int[INITIAL_CAPACITY];
+    private int[] fromLengths = new int[INITIAL_CAPACITY];
+    private int[] toLengths = new int[INITIAL_CAPACITY];
+    private BitSet done = new BitSet();
+    // Rows whose description has non-ASCII characters, which are matched as Strings by find.
+    private BitSet nonAscii = new BitSet();
+
+    private byte[] arena = new byte[INITIAL_ARENA_BYTES];
+    private int arenaSize = 0;
+    private int liveArenaBytes = 0;
+
+    // The row of every task by its ID, kept as the order key. Built by the first lookup by ID, kept up
+    // to date by add, and dropped whenever rows move.
+    private TaskIdMap rowsById;
+
+    @Override
+    public void addTask(Task task) {
+        assignId(task);
+        ensureCapacity(size + 1);
+
+        byte[] description = task.getDescription().getBytes(StandardCharsets.UTF_8);
+        byte[] from = new byte[0];
+        byte[] to = new byte[0];
+        if (task instanceof Deadline) {
+            types[size] = 'D';
+            deadlines[size] = task.getDateTime().toEpochSecond(ZoneOffset.UTC);
+        } else if (task instanceof Event) {
+            types[size] = 'E';
+            from = ((Event) task).getFrom().getBytes(StandardCharsets.UTF_8);
+            to = ((Event) task).getTo().getBytes(StandardCharsets.UTF_8);
+        } else {
+            types[size] = 'T';
+        }
+
+        ids[size] = task.getId();
+        done.set(size, task.isDone());
+        nonAscii.set(size, !isAscii(description));
+        descriptionLengths[size] = description.length;
+        fromLengths[size] = from.length;
+        toLengths[size] = to.length;
+        textStarts[size] = appendText(description, from, to);
+        if (rowsById != null) {
+            rowsById.put(task.getId(), null, size);
+        }
+        size++;
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public Task getTask(int index) {
+        Objects.checkIndex(index, size);
+        int start = textStarts[index];
+        String description = text(start, descriptionLengths[index]);
+
+        Task task;
+        switch (types[index]) {
+        case 'D':
+            task = new Deadline(description, LocalDateTime.ofEpochSecond(deadlines[index], 0, ZoneOffset.UTC));
+            break;
+        case 'E':
+            int fromStart = start + descriptionLengths[index];
+            task = new Event(description, text(fromStart, fromLengths[index]),
+                    text(fromStart + fromLengths[index], toLengths[index]));
+            break;
+        default:
+            task = new Todo(description);
+            break;
+        }
+
+        if (done.get(index)) {
+            task.markAsDone();
+        }
+        task.setId(ids[index]);
+        return task;
+    }
+
+    @Override
+    public Task mark(int index) throws SparkException {
+        checkIndex(index);
+        done.set(index);
+        return getTask(index);
+    }
+
+    @Override
+    public Task unmark(int index) throws SparkException {
+        checkIndex(index);
+        done.clear(index);
+        return getTask(index);
+    }
+
+    @Override
+    public Task deleteTask(int index) throws SparkException {
+        checkIndex(index);
+        Task removed = getTask(index);
+        liveArenaBytes -= descriptionLengths[index] + fromLengths[index] + toLengths[index];
+
+        int tail = size - index - 1;
+        System.arraycopy(types, index + 1, types, index, tail);
+        System.arraycopy(ids, index + 1, ids, index, tail);
+        System.arraycopy(deadlines, index + 1, deadlines, index, tail);
+        System.arraycopy(textStarts, index + 1, textStarts, index, tail);
+        System.arraycopy(descriptionLengths, index + 1, descriptionLengths, index, tail);
+        System.arraycopy(fromLengths, index + 1, fromLengths, index, tail);
+        System.arraycopy(toLengths, index + 1, toLengths, index, tail);
+        removeBit(done, index, size);
+        removeBit(nonAscii, index, size);
+        size--;
+        rowsById = null;
+
+        if (arenaSize > INITIAL_ARENA_BYTES && liveArenaBytes < arenaSize / 2) {
+            compactArena();
+        }
+        return removed;
+    }
+
+    /**
+     * Deletes the tasks by copying the remaining rows of every column into place in one pass.
+     */
+    @Override
+    public List<Task> deleteAll(int[] indices) throws SparkException {
+        checkIndices(indices);
+        List<Task> removed = new ArrayList<>(indices.length);
+        int[] kept = new int[size - indices.length];
+        int next = 0;
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (next < indices.length && indices[next] == i) {
+                removed.add(getTask(i));
+                liveArenaBytes -= descriptionLengths[i] + fromLengths[i] + toLengths[i];
+                next++;
+            } else {
+                kept[count++] = i;
+            }
+        }
+
+        size = kept.length;
+        applyOrder(kept);
+        if (arenaSize > INITIAL_ARENA_BYTES && liveArenaBytes < arenaSize / 2) {
+            compactArena();
+        }
+        return removed;
+    }
+
+    /**
+     * Finds all tasks whose description contains the keyword, ignoring case.
+     * <p>
+     * For an ASCII keyword, ASCII descriptions are matched byte by byte in the arena. Other
+     * descriptions are decoded and lower-cased, as in {@link TaskList#find}.
+     */
+    @Override
+    public List<Task> find(String keyword) {
+        String key = keyword.toLowerCase();
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        boolean canMatchBytes = HAS_ASCII_LOWER_CASE && isAscii(keyBytes);
+
+        List<Task> matches = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            boolean isMatch = (canMatchBytes && !nonAscii.get(i))
+                    ? containsIgnoringAsciiCase(textStarts[i], descriptionLengths[i], keyBytes)
+                    : DescriptionPool.toLowerCase(text(textStarts[i], descriptionLengths[i])).contains(key);
+            if (isMatch) {
+                matches.add(getTask(i));
+            }
+        }
+        return matches;
+    }
+
+    @Override
+    public List<Task> getSortedByDateTime() {
+        int[] order = sortedRows();
+        List<Task> sorted = new ArrayList<>(size);
+        for (int row : order) {
+            sorted.add(getTask(row));
+        }
+        return sorted;
+    }
+
+    @Override
+    public List<Task> findDueBefore(LocalDateTime dateTime) {
+        long bound = dateTime.toEpochSecond(ZoneOffset.UTC);
+        boolean includesBound = dateTime.getNano() > 0;
+
+        int[] rows = new int[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (types[i] == 'D' && (deadlines[i] < bound || (includesBound && deadlines[i] == bound))) {
+                rows[count++] = i;
+            }
+        }
+        rows = sortByDeadline(Arrays.copyOf(rows, count));
+
+        List<Task> matches = new ArrayList<>(count);
+        for (int row : rows) {
+            matches.add(getTask(row));
+        }
+        return matches;
+    }
+
+    /**
+     * Sorts the rows by deadline, comparing the epoch seconds directly. Tasks without a deadline are
+     * placed at the end, and tasks with the same deadline keep their order.
+     */
+    @Override
+    public boolean sortByDateTime() {
+        int[] order = sortedRows();
+        boolean isChanged = false;
+        for (int i = 0; i < size && !isChanged; i++) {
+            isChanged = order[i] != i;
+        }
+        if (!isChanged) {
+            return false;
+        }
+        applyOrder(order);
+        return true;
+    }
+
+    @Override
+    public void reorder(long[] ids) {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = rowOfId(ids[i]);
+        }
+        applyOrder(order);
+    }
+
+    /**
+     * Inserts a task by adding it as the last row and then moving the rows after the given index down.
+     */
+    @Override
+    public void insertTask(int index, Task task) throws SparkException {
+        if (index < 0 || index > size) {
+            throw new SparkException("Task number must be between 1 and " + (size + 1) + ".");
+        }
+        addTask(task);
+        if (index == size - 1) {
+            return;
+        }
+
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = (i < index) ? i : (i == index) ? size - 1 : i - 1;
+        }
+        applyOrder(order);
+    }
+
+    /**
+     * Inserts the tasks by adding them as the last rows and then moving every row into place at once.
+     */
+    @Override
+    public void insertAll(int[] indices, List<Task> inserted) throws SparkException {
+        checkInsertIndices(indices, inserted.size());
+        int oldSize = size;
+        for (Task task : inserted) {
+            addTask(task);
+        }
+
+        int[] order = new int[size];
+        int next = 0;
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            order[i] = (next < indices.length && indices[next] == i) ? oldSize + next++ : kept++;
+        }
+        applyOrder(order);
+    }
+
+    /**
+     * Rearranges every column so that row {@code i} holds what was in row {@code order[i]}.
+     */
+    private void applyOrder(int[] order) {
+        types = permute(types, order);
+        ids = permute(ids, order);
+        deadlines = permute(deadlines, order);
+        textStarts = permute(textStarts, order);
+        descriptionLengths = permute(descriptionLengths, order);
+        fromLengths = permute(fromLengths, order);
+        toLengths = permute(toLengths, order);
+        done = permute(done, order);
+        nonAscii = permute(nonAscii, order);
+        rowsById = null;
+    }
+
+    @Override
+    public Task getTaskById(long id) {
+        int row = rowOfId(id);
+        return row < 0 ? null : getTask(row);
+    }
+
+    @Override
+    public int indexOfId(long id) throws SparkException {
+        int row = rowOfId(id);
+        if (row < 0) {
+            throw new SparkException("There is no task with ID #" + id + ".");
+        }
+        return row;
+    }
+
+    /**
+     * Returns the row of the task with the given ID, or -1 if there is none, building the map of
+     * rows by ID first if rows have moved since the last lookup.
+     */
+    private int rowOfId(long id) {
+        if (rowsById == null) {
+            rowsById = new TaskIdMap();
+            for (int i = 0; i < size; i++) {
+                rowsById.put(ids[i], null, i);
+            }
+        }
+        return rowsById.contains(id) ? (int) rowsById.getOrder(id) : -1;
+    }
+
+    /**
+     * Returns the row numbers in date/time order, undated rows last.
+     */
+    private int[] sortedRows() {
+        int[] dated = new int[size];
+        int[] undated = new int[size];
+        int datedCount = 0;
+        int undatedCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (types[i] == 'D') {
+                dated[datedCount++] = i;
+            } else {
+                undated[undatedCount++] = i;
+            }
+        }
+
+        int[] order = sortByDeadline(Arrays.copyOf(dated, datedCount));
+        order = Arrays.copyOf(order, size);
+        System.arraycopy(undated, 0, order, datedCount, undatedCount);
+        return order;
+    }
+
+    /**
+     * Stably sorts rows of deadlines by their deadline with a bottom-up merge sort.
+     */
+    private int[] sortByDeadline(int[] rows) {
+        int[] from = rows;
+        int[] to = new int[rows.length];
+        for (int width = 1; width < rows.length; width *= 2) {
+            for (int start = 0; start < rows.length; start += 2 * width) {
+                int middle = Math.min(start + width, rows.length);
+                int end = Math.min(start + 2 * width, rows.length);
+                int left = start;
+                int right = middle;
+                for (int k = start; k < end; k++) {
+                    if (left < middle && (right >= end || deadlines[from[left]] <= deadlines[from[right]])) {
+                        to[k] = from[left++];
+                    } else {
+                        to[k] = from[right++];
+                    }
+                }
+            }
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+        return from;
+    }
+
+    private boolean containsIgnoringAsciiCase(int start, int length, byte[] key) {
+        for (int offset = 0; offset + key.length <= length; offset++) {
+            int j = 0;
+            while (j < key.length && toLowerAscii(arena[start + offset + j]) == key[j]) {
+                j++;
+            }
+            if (j == key.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte toLowerAscii(byte b) {
+        return (b >= 'A' && b <= 'Z') ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    private static boolean isAscii(byte[] bytes) {
+        for (byte b : bytes) {
+            if (b < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String text(int start, int length) {
+        return new String(arena, start, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Appends a row's strings to the arena.
+     *
+     * @return The offset of the first string.
+     */
+    private int appendText(byte[] description, byte[] from, byte[] to) {
+        int length = description.length + from.length + to.length;
+        if (arenaSize + length > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + length));
+        }
+        int start = arenaSize;
+        System.arraycopy(description, 0, arena, start, description.length);
+        System.arraycopy(from, 0, arena, start + description.length, from.length);
+        System.arraycopy(to, 0, arena, start + description.length + from.length, to.length);
+        arenaSize += length;
+        liveArenaBytes += length;
+        return start;
+    }
+
+    /**
+     * Copies the strings of the remaining rows into a new arena, dropping those of deleted rows.
+     */
+    private void compactArena() {
+        byte[] compacted = new byte[Math.max(INITIAL_ARENA_BYTES, liveArenaBytes * 2)];
+        int position = 0;
+        for (int i = 0; i < size; i++) {
+            int length = descriptionLengths[i] + fromLengths[i] + toLengths[i];
+            System.arraycopy(arena, textStarts[i], compacted, position, length);
+            textStarts[i] = position;
+            position += length;
+        }
+        arena = compacted;
+        arenaSize = position;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= types.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, types.length * 2);
+        types = Arrays.copyOf(types, newCapacity);
+        ids = Arrays.copyOf(ids, newCapacity);
+        deadlines = Arrays.copyOf(deadlines, newCapacity);
+        textStarts = Arrays.copyOf(textStarts, newCapacity);
+        descriptionLengths = Arrays.copyOf(descriptionLengths, newCapacity);
+        fromLengths = Arrays.copyOf(fromLengths, newCapacity);
+        toLengths = Arrays.copyOf(toLengths, newCapacity);
+    }
+
+    /**
+     * Removes the bit at the given index, moving the bits after it down by one.
+     */
+    private static void removeBit(BitSet bits, int index, int length) {
+        BitSet tail = bits.get(index + 1, length);
+        bits.clear(index, length);
+        for (int i = tail.nextSetBit(0); i >= 0; i = tail.nextSetBit(i + 1)) {
+            bits.set(index + i);
+        }
+    }
+
+    private byte[] permute(byte[] column, int[] order) {
+        byte[] permuted = new byte[column.length];
+        for (int i = 0; i < size; i++) {
+            permuted[i] = column[order[i]];
+        }
+        return permuted;
+    }
+
+    private long[] permute(long[] column, int[] order) {
+        long[] permuted = new long[column.length];
+        for (int i = 0; i < size; i++) {
+            permuted[i] = column[order[i]];
+        }
+        return permuted;
+    }
+
+    private int[] permute(int[] column, int[] order) {
+        int[] permuted = new int[column.length];
+        for (int i = 0; i < size; i++) {
+            permuted[i] = column[order[i]];
+        }
+        return permuted;
+    }
+
+    private BitSet permute(BitSet column, int[] order) {
+        BitSet permuted = new BitSet(size);
+        for (int i = 0; i < size; i++) {
+            permuted.set(i, column.get(order[i]));
+        }
+        return permuted;
+    }
+}
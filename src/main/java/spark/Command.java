@@ -0,0 +1,109 @@
+package spark;
+
+/**
+ * A command word together with the handler that carries it out, and what running it involves.
+ * <p>
+ * Commands are created once and looked up by word in a {@link CommandRegistry}, so adding a
+ * command only takes registering another one.
+ */
+public class Command {
+    /**
+     * Carries out a command.
+     */
+    @FunctionalInterface
+    public interface Handler {
+        /**
+         * Runs the command with the given arguments.
+         *
+         * @param rest The arguments following the command word.
+         * @return The reply to show the user.
+         * @throws SparkException If the arguments are invalid or saving fails.
+         */
+        String run(String rest) throws SparkException;
+    }
+
+    private final String word;
+    private final boolean isChanging;
+    private final boolean isSaving;
+    private final Handler handler;
+
+    /**
+     * Creates a command.
+     *
+     * @param word The word that starts the command, e.g. {@code todo}.
+     * @param isChanging Whether the command may change the tasks.
+     * @param isSaving Whether the handler writes to the storage. The handler saves its own change,
+     *                 since only it knows what changed.
+     * @param handler The handler that carries out the command.
+     */
+    public Command(String word, boolean isChanging, boolean isSaving, Handler handler) {
+        assert !word.isEmpty() && word.indexOf(' ') < 0 : "command word should be a single word";
+        this.word = word;
+        this.isChanging = isChanging;
+        this.isSaving = isSaving;
+        this.handler = handler;
+    }
+
+    /**
+     * Creates a command that only reads the tasks and never writes to the storage.
+     *
+     * @param word The word that starts the command.
+     * @param handler The handler that carries out the command.
+     * @return The command.
+     */
+    public static Command reading(String word, Handler handler) {
+        return new Command(word, false, false, handler);
+    }
+
+    /**
+     * Creates a command that changes the tasks and saves the change.
+     *
+     * @param word The word that starts the command.
+     * @param handler The handler that carries out the command.
+     * @return The command.
+     */
+    public static Command changing(String word, Handler handler) {
+        return new Command(word, true, true, handler);
+    }
+
+    public String getWord() {
+        return word;
+    }
+
+    /**
+     * Returns whether the command may change the tasks.
+     */
+    public boolean isChanging() {
+        return isChanging;
+    }
+
+    /**
+     * Returns whether the command's handler writes to the storage.
+     * <p>
+     * The flag does not save anything itself: the handler calls the {@code Storage.saveX} method for
+     * its change. {@link Spark#getResponse} uses it to report writes that failed in the background
+     * after the command, and to run the command under its lock.
+     */
+    public boolean isSaving() {
+        return isSaving;
+    }
+
+    /**
+     * Returns whether the command neither changes the tasks nor writes to the storage, and can
+     * therefore run at the same time as other commands.
+     */
+    public boolean isReadOnly() {
+        return !isChanging && !isSaving;
+    }
+
+    /**
+     * Runs the command.
+     *
+     * @param rest The arguments following the command word.
+     * @return The reply to show the user.
+     * @throws SparkException If the arguments are invalid or saving fails.
+     */
+    public String run(String rest) throws SparkException {
+        return handler.run(rest);
+    }
+}
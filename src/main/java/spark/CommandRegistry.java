@@ -0,0 +1,38 @@
+package spark;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps command words to the {@link Command}s they start.
+ */
+public class CommandRegistry {
+    private final Map<String, Command> commands = new HashMap<>();
+
+    /**
+     * Adds a command, which is then started by its word.
+     *
+     * @param command The command to add. No other command may have the same word.
+     * @return This registry, so that registrations can be chained.
+     */
+    public CommandRegistry register(Command command) {
+        Command previous = commands.putIfAbsent(command.getWord(), command);
+        assert previous == null : "command word should be registered once: " + command.getWord();
+        return this;
+    }
+
+    /**
+     * Returns the command started by the given word.
+     *
+     * @param word The command word.
+     * @return The command.
+     * @throws SparkException If no command has that word.
+     */
+    public Command get(String word) throws SparkException {
+        Command command = commands.get(word);
+        if (command == null) {
+            throw new SparkException("The input you provided is invalid");
+        }
+        return command;
+    }
+}
@@ -0,0 +1,88 @@
+package spark;
+
+/**
+ * Splits a command line into its parts in one pass from left to right, without regular expressions.
+ * <p>
+ * The tokenizer only keeps its position in the text. Each part is returned as one trimmed substring,
+ * so no intermediate arrays or untrimmed strings are created. Whitespace is anything
+ * {@link String#trim()} removes.
+ */
+public final class CommandTokenizer {
+    private final String text;
+    private final int end;
+    private int position;
+
+    /**
+     * Creates a tokenizer positioned at the start of the text.
+     *
+     * @param text The text to split.
+     */
+    public CommandTokenizer(String text) {
+        this.text = text;
+        this.end = text.length();
+        this.position = 0;
+    }
+
+    /**
+     * Returns the next word, up to the next space, and moves past that space.
+     *
+     * @return The word, or an empty string if only whitespace is left.
+     */
+    public String nextWord() {
+        int start = skipWhitespace(position);
+        int wordEnd = text.indexOf(' ', start);
+        if (wordEnd < 0) {
+            position = end;
+            return slice(start, end);
+        }
+        position = wordEnd + 1;
+        return text.substring(start, wordEnd);
+    }
+
+    /**
+     * Returns the text up to the next occurrence of the flag (e.g. {@code /by}), without surrounding
+     * whitespace, and moves past the flag.
+     *
+     * @param flag The flag to look for.
+     * @return The text before the flag, or {@code null} if the flag does not occur again, in which
+     *     case the position does not change.
+     */
+    public String upTo(String flag) {
+        int flagStart = text.indexOf(flag, position);
+        if (flagStart < 0) {
+            return null;
+        }
+        String part = slice(position, flagStart);
+        position = flagStart + flag.length();
+        return part;
+    }
+
+    /**
+     * Returns the rest of the text without surrounding whitespace, and moves to the end.
+     *
+     * @return The rest of the text, possibly empty.
+     */
+    public String rest() {
+        String rest = slice(position, end);
+        position = end;
+        return rest;
+    }
+
+    private int skipWhitespace(int from) {
+        while (from < end && text.charAt(from) <= ' ') {
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * Returns the text between the given offsets without leading or trailing whitespace.
+     */
+    private String slice(int from, int to) {
+        from = skipWhitespace(from);
+        while (to > from && text.charAt(to - 1) <= ' ') {
+            to--;
+        }
+        return text.substring(from, to);
+    }
+}
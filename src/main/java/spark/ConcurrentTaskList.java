@@ -0,0 +1,290 @@
+package spark;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link TaskList} that several threads can use at once, e.g. the command line and the window
+ * sharing one {@link Spark}.
+ * <p>
+ * Changes take a lock, so they happen one at a time, and each change ends by publishing the new
+ * {@link TaskTree}. Since the tree is immutable and shares its unchanged nodes, publishing takes
+ * O(1) time, and readers never wait: {@link #getSize}, {@link #getTask} and {@link #getAll} read the
+ * last published tree, which no later change can alter.
+ * <p>
+ * To keep published tasks unchanged too, marking a task replaces it with a marked copy instead of
+ * changing it in place. Tasks returned by this list must therefore not be changed directly.
+ * <p>
+ * Queries that use the indexes ({@link #find}, {@link #getSortedByDateTime}, {@link #findDueBefore},
+ * {@link #getTaskById} and {@link #indexOfId}) use them if the lock is free, and otherwise scan the
+ * published tree instead of waiting.
+ */
+public class ConcurrentTaskList extends TaskList {
+    private static final Comparator<Task> BY_DATE_TIME =
+            Comparator.comparing(Task::getDateTime, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile TaskTree published = TaskTree.empty();
+
+    @Override
+    public void addTask(Task task) {
+        lock.lock();
+        try {
+            super.addTask(task);
+            published = toTree();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getSize() {
+        return published.size();
+    }
+
+    @Override
+    public Task getTask(int index) {
+        return published.get(index);
+    }
+
+    /**
+     * Returns all tasks as they were after the last completed change.
+     */
+    @Override
+    public List<Task> getAll() {
+        return published.toList();
+    }
+
+    @Override
+    public Task mark(int index) throws SparkException {
+        return setDone(index, true);
+    }
+
+    @Override
+    public Task unmark(int index) throws SparkException {
+        return setDone(index, false);
+    }
+
+    @Override
+    public Task deleteTask(int index) throws SparkException {
+        lock.lock();
+        try {
+            Task removed = super.deleteTask(index);
+            published = toTree();
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Marks the tasks as done, publishing them all at once.
+     */
+    @Override
+    public List<Task> markAll(int[] indices) throws SparkException {
+        return setDoneAll(indices, true);
+    }
+
+    /**
+     * Marks the tasks as not done, publishing them all at once.
+     */
+    @Override
+    public List<Task> unmarkAll(int[] indices) throws SparkException {
+        return setDoneAll(indices, false);
+    }
+
+    @Override
+    public List<Task> deleteAll(int[] indices) throws SparkException {
+        lock.lock();
+        try {
+            List<Task> removed = super.deleteAll(indices);
+            published = toTree();
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean sortByDateTime() {
+        lock.lock();
+        try {
+            boolean isChanged = super.sortByDateTime();
+            published = toTree();
+            return isChanged;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void reorder(long[] ids) {
+        lock.lock();
+        try {
+            super.reorder(ids);
+            published = toTree();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void insertTask(int index, Task task) throws SparkException {
+        lock.lock();
+        try {
+            super.insertTask(index, task);
+            published = toTree();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void insertAll(int[] indices, List<Task> inserted) throws SparkException {
+        lock.lock();
+        try {
+            super.insertAll(indices, inserted);
+            published = toTree();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Task> find(String keyword) {
+        if (lock.tryLock()) {
+            try {
+                return super.find(keyword);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        String key = keyword.toLowerCase();
+        List<Task> matches = new ArrayList<>();
+        for (Task task : published) {
+            if (DescriptionPool.toLowerCase(task.getDescription()).contains(key)) {
+                matches.add(task);
+            }
+        }
+        return matches;
+    }
+
+    @Override
+    public List<Task> getSortedByDateTime() {
+        if (lock.tryLock()) {
+            try {
+                return super.getSortedByDateTime();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        List<Task> sorted = published.toList();
+        sorted.sort(BY_DATE_TIME);
+        return sorted;
+    }
+
+    @Override
+    public List<Task> findDueBefore(LocalDateTime dateTime) {
+        if (lock.tryLock()) {
+            try {
+                return super.findDueBefore(dateTime);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        List<Task> matches = new ArrayList<>();
+        for (Task task : published) {
+            if (task.getDateTime() != null && task.getDateTime().isBefore(dateTime)) {
+                matches.add(task);
+            }
+        }
+        matches.sort(BY_DATE_TIME);
+        return matches;
+    }
+
+    @Override
+    public Task getTaskById(long id) {
+        if (lock.tryLock()) {
+            try {
+                return super.getTaskById(id);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        for (Task task : published) {
+            if (task.getId() == id) {
+                return task;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int indexOfId(long id) throws SparkException {
+        if (lock.tryLock()) {
+            try {
+                return super.indexOfId(id);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int index = 0;
+        for (Task task : published) {
+            if (task.getId() == id) {
+                return index;
+            }
+            index++;
+        }
+        throw new SparkException("There is no task with ID #" + id + ".");
+    }
+
+    private Task setDone(int index, boolean isDone) throws SparkException {
+        lock.lock();
+        try {
+            checkIndex(index);
+            Task changed = replaceDone(index, isDone);
+            published = toTree();
+            return changed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private List<Task> setDoneAll(int[] indices, boolean isDone) throws SparkException {
+        lock.lock();
+        try {
+            checkIndices(indices);
+            List<Task> changed = new ArrayList<>(indices.length);
+            for (int index : indices) {
+                changed.add(replaceDone(index, isDone));
+            }
+            published = toTree();
+            return changed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the task at the given index with a copy that has the given done status, without
+     * publishing the change. The lock must be held.
+     */
+    private Task replaceDone(int index, boolean isDone) {
+        Task changed = toTree().get(index).copy();
+        if (isDone) {
+            changed.markAsDone();
+        } else {
+            changed.markAsNotDone();
+        }
+        replaceTask(index, changed);
+        return changed;
+    }
+}
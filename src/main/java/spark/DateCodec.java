@@ -0,0 +1,115 @@
+package spark;
+
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.Year;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Reads and writes the two date/time formats Spark uses: {@code yyyy-MM-dd HHmm} for input, and
+ * {@code MMM d yyyy, h:mma} (e.g. "Jan 25 2025, 12:00PM") for display and the text save format.
+ * <p>
+ * Input in its usual fixed-width form is parsed digit by digit without a {@link DateTimeFormatter}.
+ * Anything else, e.g. Feb 30, which is moved to the last day of the month, or {@code 2400}, goes
+ * through the formatter, so the results and errors are the same as parsing with the formatter alone.
+ * <p>
+ * Formatted dates are kept in a bounded table, slotted by hash like the {@link DescriptionPool}, so
+ * saving or listing many tasks due at the same times formats each time only once. Safe to use from
+ * several threads.
+ */
+public final class DateCodec {
+    static final int CAPACITY = 1024;
+
+    private static final String INPUT_PATTERN = "yyyy-MM-dd HHmm";
+    private static final DateTimeFormatter INPUT_FORMAT = DateTimeFormatter.ofPattern(INPUT_PATTERN);
+    private static final DateTimeFormatter DISPLAY_FORMAT = DateTimeFormatter.ofPattern("MMM d yyyy, h:mma");
+
+    private static final AtomicReferenceArray<Entry> formatted = new AtomicReferenceArray<>(CAPACITY);
+
+    private static final class Entry {
+        private final LocalDateTime dateTime;
+        private final String text;
+
+        private Entry(LocalDateTime dateTime, String text) {
+            this.dateTime = dateTime;
+            this.text = text;
+        }
+    }
+
+    private DateCodec() {
+    }
+
+    /**
+     * Parses a date/time typed by the user.
+     *
+     * @param text The date/time in the format {@code yyyy-MM-dd HHmm}, e.g. "2025-01-25 1200".
+     * @return The parsed date/time.
+     * @throws DateTimeParseException If the text is not a valid date/time in that format.
+     */
+    public static LocalDateTime parseInput(String text) {
+        if (text.length() == INPUT_PATTERN.length()
+                && text.charAt(4) == '-' && text.charAt(7) == '-' && text.charAt(10) == ' ') {
+            int year = digits(text, 0, 4);
+            int month = digits(text, 5, 7);
+            int day = digits(text, 8, 10);
+            int hour = digits(text, 11, 13);
+            int minute = digits(text, 13, 15);
+            if (year >= 1 && month >= 1 && month <= 12 && day >= 1
+                    && day <= Month.of(month).length(Year.isLeap(year))
+                    && hour >= 0 && hour <= 23 && minute >= 0 && minute <= 59) {
+                return LocalDateTime.of(year, month, day, hour, minute);
+            }
+        }
+        return LocalDateTime.parse(text, INPUT_FORMAT);
+    }
+
+    /**
+     * Formats a date/time for display, e.g. "Jan 25 2025, 12:00PM".
+     *
+     * @param dateTime The date/time.
+     * @return The formatted date/time, which is the same instance for equal date/times still in the table.
+     */
+    public static String format(LocalDateTime dateTime) {
+        int slot = slotOf(dateTime);
+        Entry entry = formatted.get(slot);
+        if (entry != null && entry.dateTime.equals(dateTime)) {
+            return entry.text;
+        }
+        String text = DISPLAY_FORMAT.format(dateTime);
+        formatted.set(slot, new Entry(dateTime, text));
+        return text;
+    }
+
+    /**
+     * Parses a date/time written by {@link #format}.
+     *
+     * @param text The formatted date/time.
+     * @return The parsed date/time.
+     * @throws DateTimeParseException If the text is not in that format.
+     */
+    public static LocalDateTime parseFormatted(String text) {
+        return LocalDateTime.parse(text, DISPLAY_FORMAT);
+    }
+
+    /**
+     * Returns the number written by the digits in the given range, or -1 if one of them is not a digit.
+     */
+    private static int digits(String text, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static int slotOf(LocalDateTime dateTime) {
+        int hash = dateTime.hashCode();
+        return (hash ^ (hash >>> 16)) & (CAPACITY - 1);
+    }
+}
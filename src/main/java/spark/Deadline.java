@@ -1,10 +1,11 @@
 package spark;
 
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 
 public class Deadline extends Task {
     protected LocalDateTime deadlineDateTime;
+    // Formatted on first use, as listing and saving ask for it every time.
+    private String deadlineString;
 
     /**
      * Constructs a new deadline task with the given description and deadline date/time.
@@ -32,14 +33,26 @@ public class Deadline extends Task {
         return "D | " + done + " | " + description + " | " + getDeadlineString();
     }
 
+    @Override
+    public void encode(TaskEncoder encoder) {
+        encoder.beginTask('D', isDone);
+        encoder.writeString(description);
+        encoder.writeDateTime(deadlineDateTime);
+        encoder.endTask();
+    }
+
     /**
      * Returns the deadline date/time as a formatted string.
      *
      * @return The deadline formatted as {@code "MMM d yyyy, h:mma"} (e.g., "Jan 25 2025, 12:00PM").
      */
     public String getDeadlineString() {
-        DateTimeFormatter deadlineFormat = DateTimeFormatter.ofPattern("MMM d yyyy, h:mma");
-        return deadlineFormat.format(this.deadlineDateTime);
+        String formatted = deadlineString;
+        if (formatted == null) {
+            formatted = DateCodec.format(this.deadlineDateTime);
+            deadlineString = formatted;
+        }
+        return formatted;
     }
 
     @Override
@@ -0,0 +1,78 @@
+package spark;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded table of recently seen task descriptions, so that tasks with the same description
+ * (e.g. "standup" or "pay rent") share one {@code String} instead of each holding a copy.
+ * <p>
+ * Each description goes into the slot given by its hash, replacing whatever was there, so the table
+ * never holds more than {@value #CAPACITY} descriptions and never needs to be cleared. A description
+ * that was replaced is simply no longer shared with tasks created later.
+ * <p>
+ * The lower-cased form of each description is kept alongside it once it is first needed, so that
+ * repeated searches over the same descriptions do not lower-case them again.
+ * <p>
+ * Safe to use from several threads, as segments are decoded in parallel.
+ */
+public final class DescriptionPool {
+    static final int CAPACITY = 4096;
+
+    private static final AtomicReferenceArray<Entry> table = new AtomicReferenceArray<>(CAPACITY);
+
+    private static final class Entry {
+        private final String text;
+        // Computed on first use. Strings are immutable, so a racy write only repeats the work.
+        private String lowerCase;
+
+        private Entry(String text) {
+            this.text = text;
+        }
+    }
+
+    private DescriptionPool() {
+    }
+
+    /**
+     * Returns the shared copy of the given description, adding it to the table if it is not there.
+     *
+     * @param description The description.
+     * @return An equal string, which is the same instance for equal descriptions still in the table.
+     */
+    public static String intern(String description) {
+        if (description == null) {
+            return null;
+        }
+        int slot = slotOf(description);
+        Entry entry = table.get(slot);
+        if (entry != null && entry.text.equals(description)) {
+            return entry.text;
+        }
+        table.set(slot, new Entry(description));
+        return description;
+    }
+
+    /**
+     * Returns the description in lower case, reusing the cached form if the description is in the table.
+     *
+     * @param description The description.
+     * @return {@code description.toLowerCase()}.
+     */
+    public static String toLowerCase(String description) {
+        Entry entry = table.get(slotOf(description));
+        if (entry == null || !entry.text.equals(description)) {
+            return description.toLowerCase();
+        }
+        String lowerCase = entry.lowerCase;
+        if (lowerCase == null) {
+            lowerCase = description.toLowerCase();
+            entry.lowerCase = lowerCase;
+        }
+        return lowerCase;
+    }
+
+    private static int slotOf(String description) {
+        int hash = description.hashCode();
+        return (hash ^ (hash >>> 16)) & (CAPACITY - 1);
+    }
+}
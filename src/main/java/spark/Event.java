@@ -18,12 +18,39 @@ public class Event extends Task {
         this.to = to;
     }
 
+    /**
+     * Returns the start time or date of this event.
+     *
+     * @return The start of the event, as entered by the user.
+     */
+    public String getFrom() {
+        return this.from;
+    }
+
+    /**
+     * Returns the end time or date of this event.
+     *
+     * @return The end of the event, as entered by the user.
+     */
+    public String getTo() {
+        return this.to;
+    }
+
     @Override
     public String toSaveString() {
         int done = isDone ? 1 : 0;
         return "E | " + done + " | " + description + " | " + from + " | " +to;
     }
 
+    @Override
+    public void encode(TaskEncoder encoder) {
+        encoder.beginTask('E', isDone);
+        encoder.writeString(description);
+        encoder.writeString(from);
+        encoder.writeString(to);
+        encoder.endTask();
+    }
+
     @Override
     public String toString() {
         return "[E]" + super.toString() + " (from: " + from + " to: " + to + ")";
@@ -7,6 +7,10 @@ import javafx.application.Application;
  */
 public class Launcher {
     public static void main(String[] args) {
+        if (args.length > 0 && (args[0].equals("--script") || args[0].equals("--serve"))) {
+            Spark.main(args);
+            return;
+        }
         Application.launch(Main.class, args);
     }
 }
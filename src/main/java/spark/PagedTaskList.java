@@ -0,0 +1,501 @@
+package spark;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link TaskList} over the segments of a sharded {@link Storage} that only keeps some of them in memory.
+ * <p>
+ * Each page holds the tasks of one segment. A page is read from its segment file the first time one of
+ * its tasks is needed, and once more than the given number of pages are resident, the least recently
+ * used page is dropped again. A changed page stays in memory until the storage has saved it to its
+ * segment, so a change is kept while a write is deferred or after a write failed.
+ */
+public class PagedTaskList extends TaskList {
+    private static final Comparator<Task> BY_DATE_TIME =
+            Comparator.comparing(Task::getDateTime, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private final ShardedTaskFiles shards;
+    private final int maxResidentPages;
+    private final List<Page> pages = new ArrayList<>();
+    private int size = 0;
+
+    // Resident pages, least recently used first. Pages changed since they were last saved are never dropped.
+    private final Map<Page, List<Task>> resident = new LinkedHashMap<>(16, 0.75f, true);
+
+    // The page of every task on a page that has been read at least once, so that a task is found by
+    // its ID by reading only its own page. Kept when a page is dropped, as it holds no tasks.
+    private final Map<Long, Page> pagesById = new HashMap<>();
+
+    /**
+     * Thrown when a page is needed but its segment cannot be read or was corrupted. It is unchecked
+     * because reading a page can happen behind any {@link TaskList} method, and carries the
+     * {@link SparkException} that {@link Spark} shows as the reply to the command that needed the page.
+     */
+    public static class PageReadException extends RuntimeException {
+        public PageReadException(SparkException cause) {
+            super(cause.getMessage(), cause);
+        }
+
+        @Override
+        public synchronized SparkException getCause() {
+            return (SparkException) super.getCause();
+        }
+    }
+
+    /**
+     * The tasks of one segment. Compared by identity, so a page stays the same key while its count changes.
+     */
+    private static class Page {
+        // The id of the segment the page was last saved to, or null if it was never saved.
+        private Long segmentId;
+        private int count;
+        // Whether the IDs of the page's tasks are in pagesById.
+        private boolean isIndexed;
+        // Whether the page changed since it was last saved, so that its segment lacks the change.
+        private boolean isUnsaved;
+
+        private Page(Long segmentId, int count, boolean isIndexed) {
+            this.segmentId = segmentId;
+            this.count = count;
+            this.isIndexed = isIndexed;
+            this.isUnsaved = segmentId == null;
+        }
+    }
+
+    /**
+     * Creates a task list over segments that have not been read yet.
+     *
+     * @param shards The segment files to read pages from.
+     * @param segmentIds The ids of the segments, in order.
+     * @param pageCounts The number of tasks in each segment, in order.
+     * @param nextId The ID the next new task gets.
+     * @param maxResidentPages The number of pages to keep in memory at most, unless more have unsaved changes.
+     */
+    public PagedTaskList(ShardedTaskFiles shards, List<Long> segmentIds, List<Integer> pageCounts, long nextId,
+            int maxResidentPages) {
+        this.shards = shards;
+        reserveIds(nextId);
+        this.maxResidentPages = Math.max(1, maxResidentPages);
+        for (int i = 0; i < pageCounts.size(); i++) {
+            pages.add(new Page(segmentIds.get(i), pageCounts.get(i), false));
+            size += pageCounts.get(i);
+        }
+    }
+
+    @Override
+    public void addTask(Task task) {
+        assignId(task);
+        Page last = pages.isEmpty() ? null : pages.get(pages.size() - 1);
+        if (last == null || last.count >= ShardedTaskFiles.SEGMENT_SIZE) {
+            last = new Page(null, 0, true);
+            pages.add(last);
+            makeResident(last, new ArrayList<>());
+        }
+        residentTasks(pages.size() - 1).add(task);
+        pagesById.put(task.getId(), last);
+        last.isUnsaved = true;
+        last.count++;
+        size++;
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public Task getTask(int index) {
+        int start = 0;
+        for (int i = 0; i < pages.size(); i++) {
+            int count = pages.get(i).count;
+            if (index < start + count) {
+                return residentTasks(i).get(index - start);
+            }
+            start += count;
+        }
+        throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+    }
+
+    @Override
+    public Task mark(int index) throws SparkException {
+        Task marked = super.mark(index);
+        pages.get(positionOf(index)).isUnsaved = true;
+        return marked;
+    }
+
+    @Override
+    public Task unmark(int index) throws SparkException {
+        Task unmarked = super.unmark(index);
+        pages.get(positionOf(index)).isUnsaved = true;
+        return unmarked;
+    }
+
+    @Override
+    public Task deleteTask(int index) throws SparkException {
+        checkIndex(index);
+        int position = positionOf(index);
+        int start = startOf(position);
+
+        Page page = pages.get(position);
+        Task removed = residentTasks(position).remove(index - start);
+        pagesById.remove(removed.getId());
+        page.isUnsaved = true;
+        page.count--;
+        size--;
+        if (page.count == 0) {
+            pages.remove(position);
+            resident.remove(page);
+        }
+        return removed;
+    }
+
+    /**
+     * Deletes the tasks page by page, compacting each page that held one of them in a single pass.
+     */
+    @Override
+    public List<Task> deleteAll(int[] indices) throws SparkException {
+        checkIndices(indices);
+        List<Task> removed = new ArrayList<>(indices.length);
+        int start = 0;
+        int next = 0;
+        int position = 0;
+        while (next < indices.length) {
+            Page page = pages.get(position);
+            int end = start + page.count;
+            if (indices[next] >= end) {
+                start = end;
+                position++;
+                continue;
+            }
+
+            List<Task> tasks = residentTasks(position);
+            List<Task> kept = new ArrayList<>(tasks.size());
+            for (int i = 0; i < tasks.size(); i++) {
+                if (next < indices.length && indices[next] == start + i) {
+                    removed.add(tasks.get(i));
+                    pagesById.remove(tasks.get(i).getId());
+                    next++;
+                } else {
+                    kept.add(tasks.get(i));
+                }
+            }
+            size -= tasks.size() - kept.size();
+            start = end;
+
+            page.isUnsaved = true;
+            page.count = kept.size();
+            if (kept.isEmpty()) {
+                pages.remove(position);
+                resident.remove(page);
+            } else {
+                resident.put(page, kept);
+                position++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Inserts a task into the page holding the given position. That page may grow beyond
+     * {@link ShardedTaskFiles#SEGMENT_SIZE} tasks until the list is next sorted.
+     */
+    @Override
+    public void insertTask(int index, Task task) throws SparkException {
+        if (index < 0 || index > size) {
+            throw new SparkException("Task number must be between 1 and " + (size + 1) + ".");
+        }
+        if (index == size) {
+            addTask(task);
+            return;
+        }
+
+        assignId(task);
+        int position = positionOf(index);
+        Page page = pages.get(position);
+        residentTasks(position).add(index - startOf(position), task);
+        pagesById.put(task.getId(), page);
+        page.isUnsaved = true;
+        page.count++;
+        size++;
+    }
+
+    /**
+     * Inserts the tasks one at a time, each into the page holding its position as {@link #insertTask} does.
+     */
+    @Override
+    public void insertAll(int[] indices, List<Task> inserted) throws SparkException {
+        checkInsertIndices(indices, inserted.size());
+        for (int i = 0; i < indices.length; i++) {
+            insertTask(indices[i], inserted.get(i));
+        }
+    }
+
+    /**
+     * Puts the tasks in the given order, reading every page, and splits them into new full pages.
+     */
+    @Override
+    public void reorder(long[] ids) {
+        Map<Long, Task> tasksById = new HashMap<>();
+        for (int i = 0; i < pages.size(); i++) {
+            for (Task task : residentTasks(i)) {
+                tasksById.put(task.getId(), task);
+            }
+        }
+        List<Task> ordered = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            ordered.add(tasksById.get(id));
+        }
+        repage(ordered);
+    }
+
+    /**
+     * Finds the task with the given ID, reading only its page (see {@link #pageOfId}).
+     */
+    @Override
+    public Task getTaskById(long id) {
+        int position = pageOfId(id);
+        if (position < 0) {
+            return null;
+        }
+        for (Task task : residentTasks(position)) {
+            if (task.getId() == id) {
+                return task;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the position of the task with the given ID, reading only its page (see {@link #pageOfId}).
+     */
+    @Override
+    public int indexOfId(long id) throws SparkException {
+        int position = pageOfId(id);
+        if (position < 0) {
+            throw new SparkException("There is no task with ID #" + id + ".");
+        }
+        int start = startOf(position);
+        List<Task> tasks = residentTasks(position);
+        for (int j = 0; j < tasks.size(); j++) {
+            if (tasks.get(j).getId() == id) {
+                return start + j;
+            }
+        }
+        throw new SparkException("There is no task with ID #" + id + ".");
+    }
+
+    /**
+     * Returns the position of the page holding the task with the given ID.
+     * <p>
+     * Once a page has been read, its IDs are kept in {@code pagesById}, so the page is found without
+     * reading any other. Otherwise the pages not read yet are read in order until the ID turns up.
+     *
+     * @return The position of the page, or -1 if no page holds the task.
+     */
+    private int pageOfId(long id) {
+        Page page = pagesById.get(id);
+        for (int i = 0; page == null && i < pages.size(); i++) {
+            if (!pages.get(i).isIndexed) {
+                residentTasks(i);
+                page = pagesById.get(id);
+            }
+        }
+        return page == null ? -1 : pages.indexOf(page);
+    }
+
+    /**
+     * Finds the tasks matching the keyword by reading every page, since an index would have to keep
+     * every task in memory.
+     */
+    @Override
+    public List<Task> find(String keyword) {
+        return findByScan(keyword.toLowerCase());
+    }
+
+    /**
+     * Returns all tasks in list order, reading every page once.
+     */
+    @Override
+    public List<Task> getAll() {
+        List<Task> all = new ArrayList<>(size);
+        for (int i = 0; i < pages.size(); i++) {
+            all.addAll(residentTasks(i));
+        }
+        return all;
+    }
+
+    /**
+     * Returns the tasks ordered by date/time, reading every page.
+     */
+    @Override
+    public List<Task> getSortedByDateTime() {
+        List<Task> all = getAll();
+        all.sort(BY_DATE_TIME);
+        return all;
+    }
+
+    /**
+     * Finds the tasks due strictly before the given date/time, reading every page.
+     */
+    @Override
+    public List<Task> findDueBefore(LocalDateTime dateTime) {
+        List<Task> matches = new ArrayList<>();
+        for (int i = 0; i < pages.size(); i++) {
+            for (Task task : residentTasks(i)) {
+                if (task.getDateTime() != null && task.getDateTime().isBefore(dateTime)) {
+                    matches.add(task);
+                }
+            }
+        }
+        matches.sort(BY_DATE_TIME);
+        return matches;
+    }
+
+    /**
+     * Sorts the tasks by date/time. Every page is read, and if the order changed, the sorted tasks
+     * are split into new full pages.
+     */
+    @Override
+    public boolean sortByDateTime() {
+        List<Task> all = getAll();
+        List<Task> sorted = new ArrayList<>(all);
+        sorted.sort(BY_DATE_TIME);
+        if (sorted.equals(all)) {
+            return false;
+        }
+        repage(sorted);
+        return true;
+    }
+
+    /**
+     * Replaces the pages with new full pages of the given tasks.
+     */
+    private void repage(List<Task> all) {
+        pages.clear();
+        resident.clear();
+        pagesById.clear();
+        for (int start = 0; start < all.size(); start += ShardedTaskFiles.SEGMENT_SIZE) {
+            int end = Math.min(start + ShardedTaskFiles.SEGMENT_SIZE, all.size());
+            Page page = new Page(null, end - start, true);
+            pages.add(page);
+            for (Task task : all.subList(start, end)) {
+                pagesById.put(task.getId(), page);
+            }
+            // Kept resident until the sorted pages are saved.
+            resident.put(page, new ArrayList<>(all.subList(start, end)));
+        }
+    }
+
+    /**
+     * Returns the position of the page holding the task at the given index.
+     */
+    private int positionOf(int index) {
+        int start = 0;
+        int position = 0;
+        while (index >= start + pages.get(position).count) {
+            start += pages.get(position).count;
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * Returns the index of the first task on the page at the given position.
+     */
+    private int startOf(int position) {
+        int start = 0;
+        for (int i = 0; i < position; i++) {
+            start += pages.get(i).count;
+        }
+        return start;
+    }
+
+    /**
+     * Records that every page was just saved, each to the segment at its position. The pages may
+     * then be dropped from memory, as their segments hold all their changes.
+     *
+     * @param segmentIds The ids of the segments the pages were saved to, in order.
+     */
+    void markSaved(List<Long> segmentIds) {
+        for (int i = 0; i < pages.size(); i++) {
+            pages.get(i).segmentId = segmentIds.get(i);
+            pages.get(i).isUnsaved = false;
+        }
+        evict(null);
+    }
+
+    /**
+     * Returns the number of tasks on each page, in order.
+     */
+    List<Integer> getPageCounts() {
+        List<Integer> counts = new ArrayList<>(pages.size());
+        for (Page page : pages) {
+            counts.add(page.count);
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the number of pages currently held in memory.
+     */
+    int getResidentPageCount() {
+        return resident.size();
+    }
+
+    /**
+     * Returns the tasks of the page at the given position, reading them from its segment if needed.
+     *
+     * @throws PageReadException If the segment cannot be read or does not hold the expected tasks.
+     * The page is then read again the next time it is needed.
+     */
+    private List<Task> residentTasks(int position) {
+        Page page = pages.get(position);
+        List<Task> tasks = resident.get(page);
+        if (tasks != null) {
+            return tasks;
+        }
+
+        try {
+            tasks = shards.readSegment(page.segmentId);
+            if (tasks.size() != page.count) {
+                throw new SparkException("Saved file was corrupted");
+            }
+        } catch (SparkException e) {
+            throw new PageReadException(e);
+        }
+        if (!page.isIndexed) {
+            for (Task task : tasks) {
+                pagesById.put(task.getId(), page);
+            }
+            page.isIndexed = true;
+        }
+        makeResident(page, tasks);
+        return tasks;
+    }
+
+    private void makeResident(Page page, List<Task> tasks) {
+        resident.put(page, tasks);
+        evict(page);
+    }
+
+    /**
+     * Drops the least recently used pages until at most {@code maxResidentPages} are in memory.
+     * Unsaved pages are kept, since their changes would be lost, and so is the given page.
+     */
+    private void evict(Page kept) {
+        Iterator<Page> leastRecentlyUsed = resident.keySet().iterator();
+        while (resident.size() > maxResidentPages && leastRecentlyUsed.hasNext()) {
+            Page page = leastRecentlyUsed.next();
+            if (page != kept && !page.isUnsaved) {
+                leastRecentlyUsed.remove();
+            }
+        }
+    }
+}
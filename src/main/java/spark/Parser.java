@@ -1,8 +1,9 @@
 package spark;
 
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.BitSet;
+import java.util.stream.IntStream;
 
 /**
  * Parses raw user input into their different components.
@@ -14,6 +15,7 @@ public class Parser {
     private static final String EVENT_FORMAT_MSG = "Event format: event <desc> /from <start> /to <end>";
     private static final String TODO_FORMAT_MSG = "Todo format: todo <description>";
     private static final String FIND_FORMAT_MSG = "Find format: find <keyword>";
+    private static final String DUE_FORMAT_MSG = "Due format: due <yyyy-MM-dd HHmm>";
 
     /**
      * Splits a raw input line into a command word and the remaining arguments.
@@ -23,15 +25,11 @@ public class Parser {
      * @throws SparkException If the input is empty
      */
     public static String[] parse(String input) throws SparkException {
-        if (input.trim().isEmpty()) throw new SparkException("Please type a command.");
+        CommandTokenizer tokens = new CommandTokenizer(input);
+        String command = tokens.nextWord();
+        if (command.isEmpty()) throw new SparkException("Please type a command.");
 
-        String[] inputSections = input.trim().split(" ", 2);
-        assert inputSections.length >= 1 : "split should produce at least one token";
-        assert !inputSections[0].isEmpty() : "command word should not be empty";
-
-        String command = inputSections[0];
-        String rest = (inputSections.length == 2) ? inputSections[1].trim() : "";
-        return new String[] { command, rest };
+        return new String[] { command, tokens.rest() };
     }
 
     /**
@@ -50,6 +48,80 @@ public class Parser {
         }
     }
 
+    /**
+     * Checks whether a command argument refers to several tasks, as in {@code mark 1-5},
+     * {@code delete 3,7,9-20} or {@code unmark all}.
+     * @param rest The argument string.
+     * @return {@code true} if the argument is {@code all} or contains a comma or a range.
+     */
+    public static boolean isIndexList(String rest) {
+        String trimmed = rest.trim();
+        return trimmed.equals("all") || trimmed.indexOf(',') >= 0 || trimmed.indexOf('-') > 0;
+    }
+
+    /**
+     * Parses a list of task numbers and ranges of task numbers, such as {@code 3,7,9-20}, or
+     * {@code all} for every task.
+     * @param rest The argument string that contains the list.
+     * @param size The number of tasks in the list, which {@code all} refers to.
+     * @param formatMessage The error message to use if parsing fails.
+     * @return The distinct 0-based indices, in increasing order.
+     * @throws SparkException If an entry is not a number or range, a range ends before it starts,
+     *     or a task number is out of range.
+     */
+    public static int[] parseIndices(String rest, int size, String formatMessage) throws SparkException {
+        String trimmed = rest.trim();
+        if (trimmed.equals("all")) {
+            return IntStream.range(0, size).toArray();
+        }
+
+        BitSet indices = new BitSet();
+        for (String entry : trimmed.split(",")) {
+            String[] bounds = entry.split("-", -1);
+            if (bounds.length > 2) {
+                throw new SparkException(formatMessage);
+            }
+            int first = parseIndex(bounds[0], formatMessage);
+            int last = bounds.length == 2 ? parseIndex(bounds[1], formatMessage) : first;
+            if (last < first) {
+                throw new SparkException(formatMessage);
+            }
+            if (first < 0 || last >= size) {
+                throw new SparkException("Task number must be between 1 and " + size + ".");
+            }
+            indices.set(first, last + 1);
+        }
+        return indices.stream().toArray();
+    }
+
+    /**
+     * Checks whether a command argument refers to a task by its ID, as in {@code mark #12}.
+     * @param rest The argument string.
+     * @return {@code true} if the argument starts with {@code #}.
+     */
+    public static boolean isTaskId(String rest) {
+        return rest.trim().startsWith("#");
+    }
+
+    /**
+     * Parses a task ID of the form {@code #<id>} from a command argument string.
+     * @param rest The argument string that contains the ID.
+     * @param formatMessage The error message to use if parsing fails.
+     * @return The parsed ID.
+     * @throws SparkException If {@code rest} does not contain a valid ID.
+     */
+    public static long parseTaskId(String rest, String formatMessage) throws SparkException {
+        String trimmed = rest.trim();
+        if (!trimmed.startsWith("#")) throw new SparkException(formatMessage);
+        try {
+            long id = Long.parseLong(trimmed.substring(1));
+            if (id <= 0) throw new SparkException(formatMessage);
+            return id;
+        } catch (NumberFormatException e) {
+            throw new SparkException(formatMessage);
+        }
+    }
+
     /**
      * Parses a {@code todo} command argument into a {@link Todo} task
      * @param rest The description portion of the todo command.
@@ -70,20 +142,19 @@ public class Parser {
      * @throws SparkException If the format is invalid or required parts are missing
      */
     public static Deadline parseDeadline(String rest) throws SparkException {
-        String[] deadlineArgs = rest.split("\\s*/by\\s*", 2);
-        if (deadlineArgs.length < 2) {
+        CommandTokenizer tokens = new CommandTokenizer(rest);
+        String description = tokens.upTo("/by");
+        if (description == null) {
             throw new SparkException(DEADLINE_FORMAT_MSG);
         }
 
-        String description = deadlineArgs[0].trim();
-        String byString = deadlineArgs[1].trim();
+        String byString = tokens.rest();
         if (description.isEmpty() || byString.isEmpty()) {
             throw new SparkException(DEADLINE_FORMAT_MSG);
         }
 
         try {
-            DateTimeFormatter deadlineFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd HHmm");
-            LocalDateTime deadlineDateTime = LocalDateTime.parse(byString, deadlineFormat);
+            LocalDateTime deadlineDateTime = DateCodec.parseInput(byString);
             return new Deadline(description, deadlineDateTime);
         } catch (DateTimeParseException e) {
             throw new SparkException("Invalid deadline date/time format. " +
@@ -98,19 +169,17 @@ public class Parser {
      * @throws SparkException If the format is invalid or required parts are missing
      */
     public static Event parseEvent(String rest) throws SparkException {
-        String[] eventArgs = rest.split("\\s*/from\\s*", 2);
-        if (eventArgs.length < 2) {
+        CommandTokenizer tokens = new CommandTokenizer(rest);
+        String description = tokens.upTo("/from");
+        if (description == null) {
             throw new SparkException(EVENT_FORMAT_MSG);
         }
-        String description = eventArgs[0].trim();
-        String[] fromTo = eventArgs[1].trim().split("\\s*/to\\s*", 2);
 
-        if (fromTo.length < 2) {
+        String fromTime = tokens.upTo("/to");
+        if (fromTime == null) {
             throw new SparkException(EVENT_FORMAT_MSG);
         }
-
-        String fromTime = fromTo[0].trim();
-        String toTime = fromTo[1].trim();
+        String toTime = tokens.rest();
 
         if (description.isEmpty() || fromTime.isEmpty() || toTime.isEmpty()) {
             throw new SparkException(EVENT_FORMAT_MSG);
@@ -133,6 +202,23 @@ public class Parser {
         return keyword;
     }
 
+    /**
+     * Parses a {@code due} command argument into the date/time tasks must be due before.
+     * @param rest The date/time from the command, in the format {@code yyyy-MM-dd HHmm}
+     * @return The parsed date/time
+     * @throws SparkException If the date/time is missing or invalid
+     */
+    public static LocalDateTime parseDue(String rest) throws SparkException {
+        if (rest.trim().isEmpty()) {
+            throw new SparkException(DUE_FORMAT_MSG);
+        }
+        try {
+            return DateCodec.parseInput(rest.trim());
+        } catch (DateTimeParseException e) {
+            throw new SparkException(DUE_FORMAT_MSG);
+        }
+    }
+
 
 
 }
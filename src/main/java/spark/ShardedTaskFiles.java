@@ -0,0 +1,579 @@
+package spark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the tasks of a {@link Storage} in segment files of at most {@value #SEGMENT_SIZE} tasks each.
+ * <p>
+ * The segments live in one folder (e.g. {@code data/spark.txt.segments}) next to a {@code manifest}
+ * that lists them in order, one {@code "<id> <count>"} line per segment, after a header line that
+ * also records the ID the next new task will get. A segment holds the tasks
+ * at the positions after those of the segments before it, so task indices work the same as with a
+ * single save file. Since a delete only shrinks one segment, segments may hold fewer tasks than
+ * {@value #SEGMENT_SIZE}; empty segments are dropped.
+ * <p>
+ * A changed segment is written to a new file under a fresh id, then the manifest is replaced to point
+ * at it, and only then is the old file removed. A crash therefore leaves the old or the new manifest,
+ * each with all the segments it lists. Segment files that no manifest lists are removed on load.
+ */
+public class ShardedTaskFiles {
+    static final int SEGMENT_SIZE = 4096;
+    private static final String MANIFEST_NAME = "manifest";
+    private static final String MANIFEST_HEADER = "# segments ";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String LS = System.lineSeparator();
+
+    private final Storage storage;
+    private final Path folder;
+
+    // Ids and task counts of the segments, in task order.
+    private final List<Long> segmentIds = new ArrayList<>();
+    private final List<Integer> segmentCounts = new ArrayList<>();
+    private long nextSegmentId = 0;
+    private long nextTaskId = 0;
+    // Set when a write failed, so that the segments on disk may lack changes the list holds.
+    private boolean isOutOfDate = false;
+
+    /**
+     * Creates the segment files for a storage.
+     *
+     * @param storage The storage whose save format and atomic writes are used.
+     * @param folder The folder holding the manifest and the segment files.
+     */
+    public ShardedTaskFiles(Storage storage, Path folder) {
+        this.storage = storage;
+        this.folder = folder;
+    }
+
+    /**
+     * Loads the tasks of all segments listed in the manifest. The segments are decoded in parallel.
+     *
+     * @param loadedTasks The empty list to add the tasks to.
+     * @return The given list, holding the tasks in order, or still empty if there is no manifest yet.
+     * @throws SparkException If the manifest or a segment is corrupted or cannot be read.
+     */
+    public TaskList load(TaskList loadedTasks) throws SparkException {
+        try {
+            if (!openManifest()) {
+                return loadedTasks;
+            }
+
+            List<SegmentLoad> loads = segmentIds.parallelStream()
+                    .map(this::loadSegment)
+                    .collect(Collectors.toList());
+
+            Storage.Format loadedFormat = null;
+            for (int i = 0; i < loads.size(); i++) {
+                SegmentLoad load = loads.get(i);
+                if (load.error != null) {
+                    throw load.error;
+                }
+                if (load.tasks.getSize() != segmentCounts.get(i)) {
+                    throw new SparkException("Saved file was corrupted");
+                }
+                for (int j = 0; j < load.tasks.getSize(); j++) {
+                    loadedTasks.addTask(load.tasks.getTask(j));
+                }
+                loadedTasks.reserveIds(load.tasks.getNextId());
+                loadedFormat = load.format;
+            }
+            if (loadedFormat != null) {
+                storage.setFormat(loadedFormat);
+            }
+            loadedTasks.reserveIds(nextTaskId);
+            return loadedTasks;
+
+        } catch (IOException e) {
+            forgetSegments();
+            throw new SparkException("Failed to load tasks: " + e.getMessage());
+        } catch (SparkException e) {
+            forgetSegments();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads only the manifest and returns a task list that reads the segments when their tasks are needed.
+     *
+     * @param maxResidentPages The number of segments to keep in memory at most.
+     * @return The task list, empty if there is no manifest yet.
+     * @throws SparkException If the manifest is corrupted or cannot be read.
+     */
+    public PagedTaskList loadLazily(int maxResidentPages) throws SparkException {
+        try {
+            if (openManifest() && !segmentIds.isEmpty()) {
+                Path first = segmentPath(segmentIds.get(0));
+                storage.setFormat(BinaryTaskFormat.isBinary(first) ? Storage.Format.BINARY : Storage.Format.TEXT);
+            }
+            return new PagedTaskList(this, segmentIds, segmentCounts, nextTaskId, maxResidentPages);
+        } catch (IOException e) {
+            forgetSegments();
+            throw new SparkException("Failed to load tasks: " + e.getMessage());
+        } catch (SparkException e) {
+            forgetSegments();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns whether a manifest has been written yet.
+     */
+    public boolean exists() {
+        return Files.exists(folder.resolve(MANIFEST_NAME));
+    }
+
+    /**
+     * Reads the tasks of one segment.
+     *
+     * @param id The id of the segment.
+     * @return The tasks of the segment, in order.
+     * @throws SparkException If the segment is corrupted or cannot be read.
+     */
+    List<Task> readSegment(long id) throws SparkException {
+        SegmentLoad load = loadSegment(id);
+        if (load.error != null) {
+            throw load.error;
+        }
+        List<Task> tasks = new ArrayList<>(load.tasks.getSize());
+        for (int i = 0; i < load.tasks.getSize(); i++) {
+            tasks.add(load.tasks.getTask(i));
+        }
+        return tasks;
+    }
+
+    /**
+     * Deletes the manifest, the segment files and their folder, e.g. once the tasks were moved to another layout.
+     * The manifest goes first, so an interrupted delete leaves no segments that would be read again.
+     *
+     * @throws IOException If a file cannot be deleted.
+     */
+    public void delete() throws IOException {
+        forgetSegments();
+        if (!Files.exists(folder)) {
+            return;
+        }
+        Files.deleteIfExists(folder.resolve(MANIFEST_NAME));
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(folder);
+    }
+
+    /**
+     * Reads the manifest, if there is one, and removes files left behind by an interrupted write.
+     *
+     * @return {@code true} if there was a manifest.
+     */
+    private boolean openManifest() throws IOException, SparkException {
+        forgetSegments();
+        if (!exists()) {
+            return false;
+        }
+        readManifest();
+        removeUnlistedFiles();
+        return true;
+    }
+
+    /**
+     * Forgets the segments read so far, so that a list replacing one that failed to load starts
+     * from an empty manifest. New segments keep getting fresh ids.
+     */
+    private void forgetSegments() {
+        segmentIds.clear();
+        segmentCounts.clear();
+    }
+
+    /**
+     * The result of decoding one segment on the fork-join pool.
+     */
+    private static class SegmentLoad {
+        private final TaskList tasks = new TaskList();
+        private Storage.Format format;
+        private SparkException error;
+    }
+
+    private SegmentLoad loadSegment(long id) {
+        SegmentLoad load = new SegmentLoad();
+        try {
+            ByteBuffer contents = Storage.readFile(segmentPath(id));
+            if (BinaryTaskFormat.isBinary(contents)) {
+                load.format = Storage.Format.BINARY;
+                BinaryTaskFormat.decode(contents, load.tasks);
+            } else {
+                load.format = Storage.Format.TEXT;
+                TextTaskFormat.decode(contents, load.tasks);
+            }
+        } catch (SparkException e) {
+            load.error = e;
+        } catch (IOException e) {
+            load.error = new SparkException("Failed to load tasks: " + e.getMessage());
+        }
+        return load;
+    }
+
+    /**
+     * Replaces all segments with the given tasks, e.g. after they were sorted. The tasks of a
+     * {@link PagedTaskList} are split as its pages are, and other lists into full segments.
+     *
+     * @param tasks The tasks to save.
+     * @throws IOException If writing to disk fails.
+     */
+    public void rewriteAll(TaskList tasks) throws IOException {
+        List<Integer> counts;
+        if (tasks instanceof PagedTaskList) {
+            counts = ((PagedTaskList) tasks).getPageCounts();
+        } else {
+            counts = new ArrayList<>();
+            for (int start = 0; start < tasks.getSize(); start += SEGMENT_SIZE) {
+                counts.add(Math.min(SEGMENT_SIZE, tasks.getSize() - start));
+            }
+        }
+        List<Long> ids = new ArrayList<>();
+        try {
+            Files.createDirectories(folder);
+            int start = 0;
+            for (int count : counts) {
+                long id = nextSegmentId++;
+                storage.writeAtomically(segmentPath(id), storage.encodeRange(tasks, start, start + count, 0));
+                ids.add(id);
+                start += count;
+            }
+            writeManifest(tasks, ids, counts);
+        } catch (IOException e) {
+            isOutOfDate = true;
+            throw e;
+        }
+        isOutOfDate = false;
+        List<Long> oldIds = new ArrayList<>(segmentIds);
+        replaceSegments(tasks, ids, counts);
+        deleteUnlisted(oldIds);
+    }
+
+    /**
+     * Writes the last task of the list, which was just added. Only the last segment is rewritten,
+     * or a new one is started if it is full.
+     *
+     * @param tasks The task list after the change.
+     * @throws SparkException If writing to disk fails.
+     */
+    public void writeAdded(TaskList tasks) throws SparkException {
+        writeInsertedAll(tasks, new int[] {tasks.getSize() - 1});
+    }
+
+    /**
+     * Writes a task that was just inserted at the given index, as {@link PagedTaskList#insertTask} places it:
+     * into the segment that held that position, or as an added task if it is now the last one.
+     *
+     * @param tasks The task list after the change.
+     * @param index The 0-based index of the inserted task.
+     * @throws SparkException If writing to disk fails.
+     */
+    public void writeInserted(TaskList tasks, int index) throws SparkException {
+        writeInsertedAll(tasks, new int[] {index});
+    }
+
+    /**
+     * Writes tasks that were just inserted at the given indices, each placed as {@link #writeInserted}
+     * places a single task, rewriting every changed segment and the manifest once.
+     *
+     * @param tasks The task list after the change.
+     * @param indices The distinct 0-based indices of the inserted tasks, in increasing order.
+     * @throws SparkException If writing to disk fails.
+     */
+    public void writeInsertedAll(TaskList tasks, int[] indices) throws SparkException {
+        if (isOutOfDate) {
+            catchUp(tasks);
+            return;
+        }
+        List<Long> ids = new ArrayList<>(segmentIds);
+        List<Integer> counts = new ArrayList<>(segmentCounts);
+        TreeSet<Integer> changed = new TreeSet<>();
+        int size = tasks.getSize() - indices.length;
+        for (int index : indices) {
+            int segment;
+            if (index == size) {
+                segment = ids.size() - 1;
+                if (segment < 0 || counts.get(segment) >= SEGMENT_SIZE) {
+                    ids.add(null);
+                    counts.add(0);
+                    segment++;
+                }
+            } else {
+                segment = findSegment(counts, index);
+            }
+            counts.set(segment, counts.get(segment) + 1);
+            changed.add(segment);
+            size++;
+        }
+        rewriteSegments(tasks, ids, counts, new ArrayList<>(changed), new ArrayList<>());
+    }
+
+    /**
+     * Rewrites the segment holding the task at the given index, e.g. after it was marked.
+     *
+     * @param tasks The task list after the change.
+     * @param index The 0-based index of the changed task.
+     * @throws SparkException If writing to disk fails.
+     */
+    public void writeChanged(TaskList tasks, int index) throws SparkException {
+        writeChangedAll(tasks, new int[] {index});
+    }
+
+    /**
+     * Rewrites the segment that held the task at the given index before it was deleted.
+     * The segment is dropped if it is now empty.
+     *
+     * @param tasks The task list after the change.
+     * @param index The 0-based index the deleted task had.
+     * @throws SparkException If writing to disk fails.
+     */
+    public void writeDeleted(TaskList tasks, int index) throws SparkException {
+        writeDeletedAll(tasks, new int[] {index});
+    }
+
+    /**
+     * Rewrites every segment holding one of the tasks at the given indices, e.g. after they were
+     * marked, and updates the manifest once.
+     *
+     * @param tasks The task list after the change.
+     * @param indices The distinct 0-based indices of the changed tasks, in increasing order.
+     * @throws SparkException If writing to disk fails.
+     */
+    public void writeChangedAll(TaskList tasks, int[] indices) throws SparkException {
+        if (isOutOfDate) {
+            catchUp(tasks);
+            return;
+        }
+        List<Integer> changed = new ArrayList<>();
+        int segment = 0;
+        int end = 0;
+        for (int index : indices) {
+            while (index >= end) {
+                end += segmentCounts.get(segment++);
+            }
+            if (changed.isEmpty() || changed.get(changed.size() - 1) != segment - 1) {
+                changed.add(segment - 1);
+            }
+        }
+        rewriteSegments(tasks, new ArrayList<>(segmentIds), new ArrayList<>(segmentCounts), changed,
+                new ArrayList<>());
+    }
+
+    /**
+     * Rewrites every segment that held one of the tasks at the given indices before they were
+     * deleted, drops those that are now empty, and updates the manifest once.
+     *
+     * @param tasks The task list after the change.
+     * @param indices The distinct 0-based indices the deleted tasks had, in increasing order.
+     * @throws SparkException If writing to disk fails.
+     */
+    public void writeDeletedAll(TaskList tasks, int[] indices) throws SparkException {
+        if (isOutOfDate) {
+            catchUp(tasks);
+            return;
+        }
+        int[] removedCounts = new int[segmentCounts.size()];
+        int segment = 0;
+        int end = 0;
+        for (int index : indices) {
+            while (index >= end) {
+                end += segmentCounts.get(segment++);
+            }
+            removedCounts[segment - 1]++;
+        }
+
+        List<Long> ids = new ArrayList<>(segmentIds);
+        List<Integer> counts = new ArrayList<>(segmentCounts);
+        List<Long> emptied = new ArrayList<>();
+        List<Integer> changed = new ArrayList<>();
+        int position = 0;
+        for (int i = 0; i < removedCounts.length; i++) {
+            int count = counts.get(position) - removedCounts[i];
+            if (count == 0) {
+                emptied.add(ids.remove(position));
+                counts.remove(position);
+                continue;
+            }
+            counts.set(position, count);
+            if (removedCounts[i] > 0) {
+                changed.add(position);
+            }
+            position++;
+        }
+        rewriteSegments(tasks, ids, counts, changed, emptied);
+    }
+
+    /**
+     * Returns the position of the segment that holds the task at the given index.
+     *
+     * @param counts The task counts of the segments, in order.
+     */
+    private static int findSegment(List<Integer> counts, int index) {
+        int start = 0;
+        for (int i = 0; i < counts.size(); i++) {
+            start += counts.get(i);
+            if (index < start) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("No segment holds task " + index);
+    }
+
+    /**
+     * Writes the segments at the given positions under fresh ids and points the manifest at them.
+     * Only then are the segments kept in memory replaced by the given ones, so that they still match
+     * the manifest on disk if a write fails; the next write then saves every segment (see
+     * {@link #catchUp}). Finally, the files the written segments replace are removed along with the
+     * given files of dropped segments.
+     *
+     * @param ids The segment ids after the change, with {@code null} for segments not written yet.
+     *            The ids of the written segments are filled in.
+     * @param counts The task counts of the segments after the change.
+     * @param segments The positions of the segments to write, in increasing order.
+     * @param oldIds The ids of segment files to remove once the manifest no longer lists them.
+     */
+    private void rewriteSegments(TaskList tasks, List<Long> ids, List<Integer> counts, List<Integer> segments,
+            List<Long> oldIds) throws SparkException {
+        try {
+            Files.createDirectories(folder);
+            int start = 0;
+            int position = 0;
+            for (int segment : segments) {
+                while (position < segment) {
+                    start += counts.get(position++);
+                }
+                int end = start + counts.get(segment);
+                long id = nextSegmentId++;
+                storage.writeAtomically(segmentPath(id), storage.encodeRange(tasks, start, end, 0));
+                Long oldId = ids.set(segment, id);
+                if (oldId != null) {
+                    oldIds.add(oldId);
+                }
+            }
+            writeManifest(tasks, ids, counts);
+        } catch (IOException e) {
+            isOutOfDate = true;
+            throw new SparkException("Failed to save tasks: " + e.getMessage());
+        }
+        replaceSegments(tasks, ids, counts);
+        deleteUnlisted(oldIds);
+    }
+
+    /**
+     * Writes every segment after an earlier write failed. The segments kept in memory still describe
+     * the files on disk, but the list also holds the change that was not saved, so the positions of
+     * the latest change cannot be mapped onto the segments.
+     */
+    private void catchUp(TaskList tasks) throws SparkException {
+        try {
+            rewriteAll(tasks);
+        } catch (IOException e) {
+            throw new SparkException("Failed to save tasks: " + e.getMessage());
+        }
+    }
+
+    private void writeManifest(TaskList tasks, List<Long> ids, List<Integer> counts) throws IOException {
+        nextTaskId = tasks.getNextId();
+        StringBuilder manifest = new StringBuilder(MANIFEST_HEADER)
+                .append(nextSegmentId).append(' ').append(nextTaskId).append(LS);
+        for (int i = 0; i < ids.size(); i++) {
+            manifest.append(ids.get(i)).append(' ').append(counts.get(i)).append(LS);
+        }
+        storage.writeAtomically(folder.resolve(MANIFEST_NAME), ByteBuffer.wrap(manifest.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Replaces the segments kept in memory with those the manifest on disk now lists, and tells a
+     * {@link PagedTaskList} that its pages are saved to them.
+     */
+    private void replaceSegments(TaskList tasks, List<Long> ids, List<Integer> counts) {
+        segmentIds.clear();
+        segmentIds.addAll(ids);
+        segmentCounts.clear();
+        segmentCounts.addAll(counts);
+        if (tasks instanceof PagedTaskList) {
+            ((PagedTaskList) tasks).markSaved(ids);
+        }
+    }
+
+    /**
+     * Removes segment files the manifest no longer lists. The change is already saved at this point,
+     * so a file that cannot be removed is left for {@link #removeUnlistedFiles} on the next load.
+     */
+    private void deleteUnlisted(List<Long> oldIds) {
+        try {
+            deleteSegments(oldIds);
+        } catch (IOException e) {
+            // removed on the next load
+        }
+    }
+
+    private void readManifest() throws IOException, SparkException {
+        List<String> lines = Files.readAllLines(folder.resolve(MANIFEST_NAME));
+        if (lines.isEmpty() || !lines.get(0).startsWith(MANIFEST_HEADER)) {
+            throw new SparkException("Saved file was corrupted");
+        }
+
+        try {
+            String[] header = lines.get(0).substring(MANIFEST_HEADER.length()).trim().split(" ");
+            nextSegmentId = Long.parseLong(header[0]);
+            // Manifests written before tasks had IDs only hold the next segment ID.
+            nextTaskId = header.length > 1 ? Long.parseLong(header[1]) : 0;
+            for (String line : lines.subList(1, lines.size())) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                String[] parts = line.trim().split(" ");
+                if (parts.length != 2) {
+                    throw new SparkException("Saved file was corrupted");
+                }
+                segmentIds.add(Long.parseLong(parts[0]));
+                segmentCounts.add(Integer.parseInt(parts[1]));
+            }
+        } catch (NumberFormatException e) {
+            throw new SparkException("Saved file was corrupted");
+        }
+    }
+
+    /**
+     * Removes segment and temporary files left behind by a crash before the manifest was replaced.
+     */
+    private void removeUnlistedFiles() throws IOException {
+        Set<Path> listed = new HashSet<>();
+        listed.add(folder.resolve(MANIFEST_NAME));
+        for (long id : segmentIds) {
+            listed.add(segmentPath(id));
+        }
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder)) {
+            for (Path file : files) {
+                if (!listed.contains(file)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private void deleteSegments(List<Long> ids) throws IOException {
+        for (long id : ids) {
+            Files.deleteIfExists(segmentPath(id));
+        }
+    }
+
+    private Path segmentPath(long id) {
+        return folder.resolve(SEGMENT_PREFIX + id);
+    }
+}
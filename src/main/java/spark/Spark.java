@@ -1,5 +1,11 @@
 package spark;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.List;
 
@@ -7,13 +13,34 @@ import java.util.List;
  * Main chatbot class that controls the UI, Task list and Storage.
  */
 public class Spark {
+    private static final int MAX_RESIDENT_PAGES = 16;
+    private static final long MAX_SAVE_DELAY_MILLIS = 50;
+    private static final String LAYOUT_PROPERTY = "spark.layout";
+    private static final String FORMAT_PROPERTY = "spark.format";
+    private static final String LIST_PROPERTY = "spark.list";
+    private static final int MAX_UNDO_STEPS = 100;
+    private static final int SCRIPT_CHECKPOINT_COMMANDS = 10_000;
+    private static final String MARK_FORMAT_MSG =
+            "Mark format: mark <taskNumber>, mark #<taskId> or mark <taskNumbers, e.g. 1-5,8 or all>";
+    private static final String UNMARK_FORMAT_MSG =
+            "Unmark format: unmark <taskNumber>, unmark #<taskId> or unmark <taskNumbers, e.g. 1-5,8 or all>";
+    private static final String DELETE_FORMAT_MSG =
+            "Delete format: delete <taskNumber>, delete #<taskId> or delete <taskNumbers, e.g. 1-5,8 or all>";
+    private static final String LS = System.lineSeparator();
+
     private final Ui ui = new Ui();
     private TaskList tasks;
-    private final Storage storage = new Storage(Paths.get("data", "spark.txt"));
+    private final TaskHistory history = new TaskHistory(MAX_UNDO_STEPS);
+    private final Storage storage;
     private boolean didLoadFail = false;
     private String loadFailedMessage = "";
-    private boolean isExit = false;
+    private volatile boolean isExit = false;
 
+    // Set when several front ends share this instance. Changes then take commandLock, so each change
+    // is saved before the next one is made, and commands that only read run without it.
+    private final boolean isShared;
+    private final Object commandLock = new Object();
+    private final CommandRegistry commands = createCommands();
 
     /**
      * Checks if the chatbot should exit.
@@ -27,21 +54,110 @@ public class Spark {
     /**
      * Constructs a Spark chatbot instance.
      * <p>
-     * Loads tasks from disk via {@link Storage#load()}.
+     * Loads tasks from disk via {@link Storage#loadLazily(int)}, using the storage opened by {@link #openStorage()}.
      * If loading fails, initializes an empty {@link TaskList} and stores a warning message
      * to be shown when the chatbot starts.
+     * <p>
+     * Anything the storage still has queued is written out when the program shuts down.
      */
     public Spark() {
+        this(false);
+    }
+
+    /**
+     * Constructs a Spark chatbot instance, which several front ends (e.g. {@link #start()} and the
+     * window) may use at once if {@code isShared} is set.
+     * <p>
+     * A shared instance loads every task into a {@link ConcurrentTaskList}, so that {@code list},
+     * {@code find} and {@code due} never wait for a change made from another front end.
+     *
+     * @param isShared Whether {@link #getResponse} may be called from several threads at once.
+     */
+    public Spark(boolean isShared) {
+        this(openStorage(), isShared);
+    }
+
+    /**
+     * Opens the storage in {@code data/spark.txt}, in the layout named by the {@code spark.layout}
+     * system property.
+     * <p>
+     * By default, the tasks are journaled, and changes are written in the background shortly after
+     * each command. With {@code -Dspark.layout=sharded}, the tasks are kept in segments that are only
+     * read once a command needs them, with at most {@value #MAX_RESIDENT_PAGES} of them in memory, and
+     * each change is written before the command returns.
+     */
+    static Storage openStorage() {
+        Storage.Layout layout = Storage.Layout.JOURNALED;
+        String name = System.getProperty(LAYOUT_PROPERTY);
+        if (name != null) {
+            try {
+                layout = Storage.Layout.valueOf(name.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.err.println("Unknown " + LAYOUT_PROPERTY + " '" + name + "', using journaled");
+            }
+        }
+        Storage storage = new Storage(Paths.get("data", "spark.txt"), layout);
+        storage.setWriteBehind(true, MAX_SAVE_DELAY_MILLIS);
+        return storage;
+    }
+
+    /**
+     * Constructs a Spark chatbot instance that keeps its tasks in the given storage.
+     * <p>
+     * With {@code -Dspark.format=binary}, the saved tasks are first rewritten in the binary format
+     * if they are still in the text format (see {@link Storage#migrateToBinary()}).
+     * With {@code -Dspark.list=columnar}, an instance that is not shared keeps every task in a
+     * {@link ColumnarTaskList}.
+     */
+    Spark(Storage storage, boolean isShared) {
+        this.storage = storage;
+        this.isShared = isShared;
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flushOnShutdown, "spark-shutdown"));
+
+        boolean isColumnar = !isShared && isColumnarListChosen();
         try {
-            List<Task> loadedTasks = storage.load();
-            this.tasks = new TaskList(loadedTasks);
+            if (isBinaryFormatChosen()) {
+                storage.migrateToBinary();
+            }
+            if (isShared) {
+                this.tasks = storage.load(new ConcurrentTaskList());
+            } else if (isColumnar) {
+                this.tasks = storage.load(new ColumnarTaskList());
+            } else {
+                this.tasks = storage.loadLazily(MAX_RESIDENT_PAGES);
+            }
         } catch (SparkException e) {
-            this.tasks = new TaskList();
+            this.tasks = isShared ? new ConcurrentTaskList() : isColumnar ? new ColumnarTaskList() : new TaskList();
             didLoadFail = true;
             loadFailedMessage = e.getMessage();
         }
     }
 
+    /**
+     * Returns whether the {@code spark.format} system property asks for the binary save format.
+     */
+    private static boolean isBinaryFormatChosen() {
+        return System.getProperty(FORMAT_PROPERTY, "").trim().equalsIgnoreCase("binary");
+    }
+
+    /**
+     * Returns whether the {@code spark.list} system property asks for a {@link ColumnarTaskList}.
+     */
+    private static boolean isColumnarListChosen() {
+        return System.getProperty(LIST_PROPERTY, "").trim().equalsIgnoreCase("columnar");
+    }
+
+    /**
+     * Executes a single user command and returns Spark's reply.
+     * <p>
+     * Each command that changes the tasks saves its own change through the storage, which queues it
+     * in the default journaled layout (see {@link #openStorage()}). If a change could not be saved in
+     * the background, the error is appended to the reply of the next command that saves.
+     * Read-only commands such as {@code list} do not touch the storage.
+     *
+     * @param input The raw user input line.
+     * @return The reply to show the user.
+     */
     public String getResponse(String input) {
         isExit = false;
 
@@ -49,59 +165,81 @@ public class Spark {
             return "";
         }
 
+        String[] parsedInput;
+        Command command;
         try {
-            String[] parsedInput = Parser.parse(input.trim());
-            String command = parsedInput[0];
-            String rest = parsedInput[1];
-
-            switch (command) {
-            case "bye":
-                isExit = true;
-                return ui.getByeMessage();
-
-            case "list":
-                return ui.getListMessage(tasks);
-
-            case "mark": {
-                return markTask(rest);
-            }
-
-            case "unmark": {
-                return unmarkTask(rest);
-            }
-
-            case "todo": {
-                return addTask(Parser.parseTodo(rest));
-            }
-
-            case "deadline": {
-                return addTask(Parser.parseDeadline(rest));
-            }
-
-            case "event": {
-                return addTask(Parser.parseEvent(rest));
-            }
+            parsedInput = Parser.parse(input.trim());
+            command = commands.get(parsedInput[0]);
+        } catch (SparkException e) {
+            return ui.getErrorMessage(e.getMessage());
+        }
 
-            case "delete": {
-                return deleteTask(rest);
-            }
+        String response = runCommand(command, parsedInput[1]);
+        if (!command.isSaving()) {
+            return response;
+        }
 
-            case "find": {
-                return findTasks(rest);
-            }
+        try {
+            storage.checkWriteError();
+        } catch (SparkException e) {
+            return response.isEmpty()
+                    ? ui.getErrorMessage(e.getMessage())
+                    : response + LS + ui.getErrorMessage(e.getMessage());
+        }
+        return response;
+    }
 
-            case "sort": {
-                return sortTasks();
+    /**
+     * Runs a command, taking {@code commandLock} unless the command is read-only and this instance
+     * is shared.
+     * <p>
+     * If a saved segment the command needs cannot be read, the reply says so and the saved tasks are
+     * left as they are, so that the file can still be repaired.
+     */
+    private String runCommand(Command command, String rest) {
+        try {
+            if (isShared && command.isReadOnly()) {
+                return command.run(rest);
             }
-
-            default:
-                throw new SparkException("The input you provided is invalid");
+            synchronized (commandLock) {
+                return command.run(rest);
             }
         } catch (SparkException e) {
             return ui.getErrorMessage(e.getMessage());
+        } catch (PagedTaskList.PageReadException e) {
+            return ui.getErrorMessage("Saved tasks could not be loaded. Reason: " + e.getCause().getMessage());
         }
     }
 
+    /**
+     * Returns the commands Spark understands.
+     */
+    private CommandRegistry createCommands() {
+        return new CommandRegistry()
+                .register(new Command("bye", false, true, rest -> exit()))
+                .register(Command.reading("list", rest -> ui.getListMessage(tasks)))
+                .register(Command.reading("find", this::findTasks))
+                .register(Command.reading("due", this::findDueTasks))
+                .register(Command.changing("todo", rest -> addTask(Parser.parseTodo(rest))))
+                .register(Command.changing("deadline", rest -> addTask(Parser.parseDeadline(rest))))
+                .register(Command.changing("event", rest -> addTask(Parser.parseEvent(rest))))
+                .register(Command.changing("mark", this::markTask))
+                .register(Command.changing("unmark", this::unmarkTask))
+                .register(Command.changing("delete", this::deleteTask))
+                .register(Command.changing("sort", rest -> sortTasks()))
+                .register(Command.changing("undo", rest -> ui.getUndoMessage(history.undo(tasks, storage))))
+                .register(Command.changing("redo", rest -> ui.getRedoMessage(history.redo(tasks, storage))));
+    }
+
+    /**
+     * Writes out any queued changes and returns the goodbye message.
+     */
+    private String exit() throws SparkException {
+        storage.flush();
+        isExit = true;
+        return ui.getByeMessage();
+    }
+
     /**
      * Starts the main chatbot interaction loop.
      * <p>
@@ -125,61 +263,121 @@ public class Spark {
     }
 
     /**
-     * Main entry point
-     * @param args (not used)
+     * Runs every command in a script, one per line, until the end of the script or {@code bye}.
+     * <p>
+     * Instead of saving after each change, the changes are saved together as one snapshot every
+     * {@value #SCRIPT_CHECKPOINT_COMMANDS} commands and at the end (see {@link Storage#setDeferred}).
+     * The replies are written as {@link #start()} would print them, without the welcome message.
+     *
+     * @param script The commands to run.
+     * @param out Where to write the replies.
+     * @return The number of commands run.
+     * @throws IOException If reading the script or writing a reply fails.
      */
-    public static void main(String[] args) {
-        new Spark().start();
+    public long runScript(BufferedReader script, Writer out) throws IOException {
+        if (didLoadFail) {
+            out.write(ui.getErrorMessage("Saved tasks could not be loaded,"
+                    + " reverting to empty list \nReason: " + loadFailedMessage) + LS);
+        }
+
+        long commandCount = 0;
+        storage.setDeferred(true);
+        try {
+            String input;
+            while (!isExit && (input = script.readLine()) != null) {
+                out.write(getResponse(input));
+                out.write(LS);
+                commandCount++;
+                if (commandCount % SCRIPT_CHECKPOINT_COMMANDS == 0) {
+                    checkpoint(out);
+                }
+            }
+        } finally {
+            storage.setDeferred(false);
+            checkpoint(out);
+            out.flush();
+        }
+        return commandCount;
     }
 
     /**
-     * Executes a single user command.
-     *
-     * @param input The raw user input line
-     * @throws SparkException If the command is invalid or required arguments are missing/incorrect.
+     * Saves the changes deferred while running a script, writing an error reply if that fails.
      */
-    private void handleInput(String input) throws SparkException {
-        String[] parsedInput = Parser.parse(input);
-        String command = parsedInput[0];
-        String rest = parsedInput[1];
-
-        switch (command) {
-        case "list":
-            ui.showList(tasks);
-            return;
-
-        case "mark":
-            markTask(rest);
-            return;
-
-        case "unmark":
-            unmarkTask(rest);
-            return;
-
-        case "delete":
-            deleteTask(rest);
-            return;
-
-        case "todo":
-            addTask(Parser.parseTodo(rest));
-            return;
+    private void checkpoint(Writer out) throws IOException {
+        try {
+            storage.checkpoint(tasks);
+            storage.flush();
+        } catch (SparkException e) {
+            out.write(ui.getErrorMessage(e.getMessage()) + LS);
+        }
+    }
 
-        case "deadline":
-            addTask(Parser.parseDeadline(rest));
-            return;
+    /**
+     * Writes out any changes still queued when the JVM shuts down, e.g. when the window is closed
+     * without entering {@code bye}.
+     */
+    private void flushOnShutdown() {
+        try {
+            storage.flush();
+        } catch (SparkException e) {
+            System.err.println(e.getMessage());
+        }
+    }
 
-        case "event":
-            addTask(Parser.parseEvent(rest));
+    /**
+     * Main entry point
+     * <p>
+     * With {@code --script <file>}, runs the commands in the file instead of reading them from the
+     * user (see {@link #runScript}), and reports how many commands per second were run.
+     * With {@code --serve [port]}, answers commands sent over a local socket (see {@link SparkServer}).
+     * @param args Either nothing, {@code --script} and the path of the script, or {@code --serve}
+     *             and optionally the port
+     */
+    public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--script")) {
+            if (args.length != 2) {
+                System.err.println("Usage: --script <file>");
+                System.exit(1);
+            }
+            runScriptFile(args[1]);
             return;
-
-        case "find":
-            ui.showFind(tasks.find(Parser.parseFind(rest)));
+        }
+        if (args.length > 0 && args[0].equals("--serve")) {
+            serve(args.length > 1 ? args[1] : String.valueOf(SparkServer.DEFAULT_PORT));
             return;
+        }
+        new Spark().start();
+    }
 
-        default:
-            throw new SparkException("The input you provided is invalid");
+    private static void serve(String port) {
+        Spark spark = new Spark(true);
+        if (spark.didLoadFail) {
+            System.err.println("Saved tasks could not be loaded, reverting to empty list. Reason: "
+                    + spark.loadFailedMessage);
         }
+        try (SparkServer server = new SparkServer(spark::getResponse, Integer.parseInt(port))) {
+            System.err.println("Spark is listening on localhost:" + server.getPort());
+            server.serve();
+        } catch (NumberFormatException e) {
+            System.err.println("Usage: --serve [port]");
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println("Failed to start server: " + e.getMessage());
+            System.exit(1);
+        }
+    }
 
+    private static void runScriptFile(String path) {
+        Spark spark = new Spark(openStorage(), false);
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+        long start = System.nanoTime();
+        try (BufferedReader script = Files.newBufferedReader(Paths.get(path))) {
+            long commandCount = spark.runScript(script, out);
+            System.err.println(spark.ui.getScriptSummary(commandCount, System.nanoTime() - start));
+        } catch (IOException e) {
+            System.err.println("Failed to run script: " + e.getMessage());
+            System.exit(1);
+        }
     }
 
     /**
@@ -190,7 +388,8 @@ public class Spark {
      */
     private String addTask(Task task) throws SparkException {
         tasks.addTask(task);
-        storage.save(tasks);
+        storage.saveAdd(tasks, task);
+        history.recordAdd(tasks, task);
         return ui.getAddedMessage(task, tasks.getSize());
     }
 
@@ -201,9 +400,20 @@ public class Spark {
      * @throws SparkException If the index is invalid or saving fails.
      */
     private String markTask(String rest) throws SparkException {
-        int index = Parser.parseIndex(rest, "Mark format: mark <taskNumber>");
+        if (Parser.isIndexList(rest)) {
+            int[] indices = Parser.parseIndices(rest, tasks.getSize(), MARK_FORMAT_MSG);
+            boolean[] wereDone = getDoneFlags(indices);
+            List<Task> marked = tasks.markAll(indices);
+            storage.saveMarkAll(tasks, indices);
+            history.recordDoneAll(indices, true, wereDone);
+            return ui.getMarkAllMessage(marked);
+        }
+        int index = parseTaskIndex(rest, MARK_FORMAT_MSG);
+        tasks.checkIndex(index);
+        boolean wasDone = tasks.getTask(index).isDone();
         Task marked = tasks.mark(index);
-        storage.save(tasks);
+        storage.saveMark(tasks, index);
+        history.recordDone(index, marked, wasDone);
         return ui.getMarkMessage(marked);
     }
 
@@ -215,9 +425,20 @@ public class Spark {
      * @throws SparkException If the index is invalid or saving fails.
      */
     private String unmarkTask(String rest) throws SparkException {
-        int index = Parser.parseIndex(rest, "Unmark format: unmark <taskNumber>");
+        if (Parser.isIndexList(rest)) {
+            int[] indices = Parser.parseIndices(rest, tasks.getSize(), UNMARK_FORMAT_MSG);
+            boolean[] wereDone = getDoneFlags(indices);
+            List<Task> unmarked = tasks.unmarkAll(indices);
+            storage.saveUnmarkAll(tasks, indices);
+            history.recordDoneAll(indices, false, wereDone);
+            return ui.getUnmarkAllMessage(unmarked);
+        }
+        int index = parseTaskIndex(rest, UNMARK_FORMAT_MSG);
+        tasks.checkIndex(index);
+        boolean wasDone = tasks.getTask(index).isDone();
         Task unmarked = tasks.unmark(index);
-        storage.save(tasks);
+        storage.saveUnmark(tasks, index);
+        history.recordDone(index, unmarked, wasDone);
         return ui.getUnmarkMessage(unmarked);
     }
 
@@ -229,12 +450,46 @@ public class Spark {
      * @throws SparkException If the index is invalid or saving fails.
      */
     private String deleteTask(String rest) throws SparkException {
-        int index = Parser.parseIndex(rest, "Delete format: delete <taskNumber>");
+        if (Parser.isIndexList(rest)) {
+            int[] indices = Parser.parseIndices(rest, tasks.getSize(), DELETE_FORMAT_MSG);
+            List<Task> deleted = tasks.deleteAll(indices);
+            storage.saveDeleteAll(tasks, indices);
+            history.recordDeleteAll(indices, deleted);
+            return ui.getDeletedAllMessage(deleted, tasks.getSize());
+        }
+        int index = parseTaskIndex(rest, DELETE_FORMAT_MSG);
         Task deleted = tasks.deleteTask(index);
-        storage.save(tasks);
+        storage.saveDelete(tasks, index);
+        history.recordDelete(index, deleted);
         return ui.getDeletedMessage(deleted, tasks.getSize());
     }
 
+    /**
+     * Returns whether each of the tasks at the given indices is done.
+     */
+    private boolean[] getDoneFlags(int[] indices) {
+        boolean[] flags = new boolean[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            flags[i] = tasks.getTask(indices[i]).isDone();
+        }
+        return flags;
+    }
+
+    /**
+     * Returns the 0-based index of the task an argument refers to, either by its number in the list
+     * or by its ID, as in {@code #12}.
+     *
+     * @param rest The argument string.
+     * @param formatMessage The error message to use if parsing fails.
+     * @throws SparkException If the argument is invalid or there is no task with the given ID.
+     */
+    private int parseTaskIndex(String rest, String formatMessage) throws SparkException {
+        if (Parser.isTaskId(rest)) {
+            return tasks.indexOfId(Parser.parseTaskId(rest, formatMessage));
+        }
+        return Parser.parseIndex(rest, formatMessage);
+    }
+
     /**
      * Finds tasks matching the keyword and returns the response.
      */
@@ -244,11 +499,25 @@ public class Spark {
     }
 
     /**
-     * Sorts tasks by date/time, saves to disk, and returns the response.
+     * Finds tasks due before the given date/time and returns the response.
+     */
+    private String findDueTasks(String rest) throws SparkException {
+        return ui.getFindMessage(tasks.findDueBefore(Parser.parseDue(rest)));
+    }
+
+    /**
+     * Sorts tasks by date/time, saves to disk if the order changed, and returns the response.
      */
     private String sortTasks() throws SparkException {
-        tasks.sortByDateTime();
-        storage.save(tasks);
+        List<Task> previous = tasks.getAll();
+        if (tasks.sortByDateTime()) {
+            storage.saveSort(tasks);
+            long[] previousOrder = new long[previous.size()];
+            for (int i = 0; i < previousOrder.length; i++) {
+                previousOrder[i] = previous.get(i).getId();
+            }
+            history.recordSort(previousOrder);
+        }
         return "Sorted tasks.\n" + ui.getListMessage(tasks);
     }
 }
@@ -0,0 +1,274 @@
+package spark;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Serves Spark over a TCP socket on the loopback address, so that other tools can send it commands
+ * without opening the window.
+ * <p>
+ * Each line a client sends is one command. The reply is sent back as a line holding the number of
+ * lines in the reply, followed by those lines, so a client knows where a reply ends even if it holds
+ * empty lines. {@code bye} is answered and then closes the connection, leaving the server running.
+ * <p>
+ * All connections are handled by one thread with a {@link Selector}, so an idle client only costs
+ * its socket and a small buffer rather than a thread of its own. Commands run on a small pool of
+ * worker threads. They should all go to one shared {@link Spark} (see {@link Spark#Spark(boolean)}),
+ * which lets commands that only read run at the same time and makes changes one at a time. Each
+ * connection has at most one command running at a time, so its replies come back in order.
+ */
+public class SparkServer implements Closeable {
+    /** The port the server listens on if none is given. */
+    public static final int DEFAULT_PORT = 7878;
+
+    private static final int INITIAL_LINE_BYTES = 256;
+    private static final int MAX_LINE_BYTES = 64 * 1024;
+    private static final String LS = System.lineSeparator();
+
+    private final Function<String, String> handler;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final int port;
+    private final ExecutorService workers;
+    // Connections whose reply is ready to be written by the selector thread.
+    private final Queue<Connection> replied = new ConcurrentLinkedQueue<>();
+    private volatile boolean isRunning = true;
+
+    /**
+     * A client connection, only used from the selector thread except where noted.
+     */
+    private class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        // Bytes read but not yet split into lines, in write mode.
+        private ByteBuffer input = ByteBuffer.allocate(INITIAL_LINE_BYTES);
+        // How far input has been searched for a line break.
+        private int scanned = 0;
+        // Set by a worker before the connection is queued in replied.
+        private ByteBuffer output;
+        private boolean isClosing = false;
+
+        private Connection(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            this.key = channel.register(selector, SelectionKey.OP_READ, this);
+        }
+
+        private void read() throws IOException {
+            if (channel.read(input) < 0) {
+                close();
+                return;
+            }
+            if (!runNextCommand() && !input.hasRemaining()) {
+                growInput();
+            }
+        }
+
+        /**
+         * Starts the next complete line as a command on a worker, and stops reading until its reply
+         * has been written.
+         *
+         * @return Whether there was a complete line.
+         */
+        private boolean runNextCommand() {
+            String line = takeLine();
+            if (line == null) {
+                key.interestOps(SelectionKey.OP_READ);
+                return false;
+            }
+            key.interestOps(0);
+            workers.execute(() -> {
+                String response = handler.apply(line);
+                // Runs on a worker. The queue hands the fields over to the selector thread.
+                output = ByteBuffer.wrap(frame(response).getBytes(StandardCharsets.UTF_8));
+                isClosing = new CommandTokenizer(line).nextWord().equals("bye");
+                replied.add(this);
+                selector.wakeup();
+            });
+            return true;
+        }
+
+        private void write() throws IOException {
+            channel.write(output);
+            if (output.hasRemaining()) {
+                key.interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+            output = null;
+            if (isClosing) {
+                close();
+                return;
+            }
+            runNextCommand();
+        }
+
+        /**
+         * Removes the first line from the input and returns it, without its line break.
+         *
+         * @return The line, or {@code null} if the input holds no complete line yet.
+         */
+        private String takeLine() {
+            for (int i = scanned; i < input.position(); i++) {
+                if (input.get(i) == '\n') {
+                    int end = i > 0 && input.get(i - 1) == '\r' ? i - 1 : i;
+                    String line = new String(input.array(), 0, end, StandardCharsets.UTF_8);
+                    input.flip();
+                    input.position(i + 1);
+                    input.compact();
+                    scanned = 0;
+                    return line;
+                }
+            }
+            scanned = input.position();
+            return null;
+        }
+
+        private void growInput() throws IOException {
+            if (input.capacity() >= MAX_LINE_BYTES) {
+                channel.write(ByteBuffer.wrap(frame("Command is too long.").getBytes(StandardCharsets.UTF_8)));
+                close();
+                return;
+            }
+            ByteBuffer larger = ByteBuffer.allocate(input.capacity() * 2);
+            input.flip();
+            larger.put(input);
+            input = larger;
+        }
+
+        private void close() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // already closed by the client
+            }
+        }
+    }
+
+    /**
+     * Opens a server on the loopback address. Nothing is accepted until {@link #serve()} is called.
+     *
+     * @param handler Returns the reply to a command line, e.g. {@link Spark#getResponse}.
+     *                It is called from several threads at once.
+     * @param port The port to listen on, or 0 for any free port.
+     * @throws IOException If the port cannot be opened.
+     */
+    public SparkServer(Function<String, String> handler, int port) throws IOException {
+        this.handler = handler;
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        this.port = server.socket().getLocalPort();
+        this.workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "spark-server-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the port the server listens on.
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Accepts connections and answers their commands until {@link #close()} is called.
+     *
+     * @throws IOException If the server socket fails.
+     */
+    public void serve() throws IOException {
+        try {
+            while (isRunning) {
+                selector.select();
+                Connection connection;
+                while ((connection = replied.poll()) != null) {
+                    if (connection.key.isValid()) {
+                        writeOrClose(connection);
+                    }
+                }
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (key.isValid() && key.isAcceptable()) {
+                        accept();
+                    } else if (key.isValid()) {
+                        handle((Connection) key.attachment(), key);
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        } finally {
+            shutDown();
+        }
+    }
+
+    /**
+     * Stops the server, closing every connection. Commands already running still finish.
+     */
+    @Override
+    public void close() {
+        isRunning = false;
+        selector.wakeup();
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel != null) {
+            channel.configureBlocking(false);
+            new Connection(channel);
+        }
+    }
+
+    private void handle(Connection connection, SelectionKey key) {
+        try {
+            if (key.isReadable()) {
+                connection.read();
+            } else if (key.isWritable()) {
+                connection.write();
+            }
+        } catch (IOException e) {
+            connection.close();
+        }
+    }
+
+    private void writeOrClose(Connection connection) {
+        try {
+            connection.write();
+        } catch (IOException e) {
+            connection.close();
+        }
+    }
+
+    private void shutDown() throws IOException {
+        workers.shutdown();
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    /**
+     * Turns a reply into the lines sent to the client, after a line holding their number.
+     */
+    private static String frame(String response) {
+        if (response.isEmpty()) {
+            return "0\n";
+        }
+        String lines = response.replace(LS, "\n");
+        return lines.split("\n", -1).length + "\n" + lines + "\n";
+    }
+}
@@ -1,15 +1,32 @@
 package spark;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
 import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
 import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
 
 /**
  * Handles saving and loading of tasks to and from a save file on disk.
@@ -21,37 +38,356 @@ import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
  *    <li>Creating the data folder if it does not exist.</li>
  *    <li>Writing the current task list to disk.</li>
  *    <li>Reading tasks from disk and converting each line back into a {@link Task}.</li>
+ *    <li>Detecting whether the save file is in the text or the binary format.</li>
+ *    <li>In journaled mode, appending each change to a journal file instead of rewriting the save file,
+ *    and compacting the journal into a fresh snapshot in the background once it grows too large.</li>
+ *    <li>In sharded mode, keeping the tasks in segment files so that a change only rewrites one segment.</li>
+ *    <li>Optionally queueing journal writes so that bursts of changes are written together in the background.</li>
  *  </ul>
  */
 public class Storage {
+    /**
+     * How the tasks are spread over files on disk.
+     */
+    public enum Layout {
+        /** One save file, rewritten in full on every change. */
+        SINGLE_FILE,
+        /** A snapshot in the save file plus journals of the changes made since. */
+        JOURNALED,
+        /** Segment files of a bounded number of tasks plus a manifest, see {@link ShardedTaskFiles}. */
+        SHARDED
+    }
+
+    /**
+     * The on-disk format of the save file.
+     */
+    public enum Format {
+        /** The line based format described in {@link TextTaskFormat}. */
+        TEXT,
+        /** The compact format described in {@link BinaryTaskFormat}. */
+        BINARY
+    }
+
+    /**
+     * How hard {@code Storage} tries to get writes onto the disk before treating them as saved.
+     * <p>
+     * Snapshots are always written to a temporary file and moved into place, so a crash never leaves
+     * a half-written save file. The policy only decides when the data is forced out of the OS cache.
+     */
+    public enum Durability {
+        /** Forces every journal append and snapshot to disk before returning. */
+        SYNC,
+        /** Forces journal appends to disk together, at most one group-commit interval after they were written. */
+        GROUP_COMMIT,
+        /** Leaves flushing to the OS. Fastest, but a power loss can drop the latest changes. */
+        OS_BUFFERED
+    }
+
     private Path filePath;
-    private static final DateTimeFormatter DEADLINE_FORMAT =
-            DateTimeFormatter.ofPattern("MMM d yyyy, h:mma");
+    private Layout layout;
+    private ShardedTaskFiles shards;
+    private Format format = Format.TEXT;
+    private final TaskEncoder textEncoder = new TextTaskFormat.Encoder();
+    private final TaskEncoder binaryEncoder = new BinaryTaskFormat.Encoder();
+    private static final String JOURNAL_SUFFIX = ".journal";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final long MAP_THRESHOLD_BYTES = 1024 * 1024;
+    private static final int DEFAULT_MAX_JOURNAL_RECORDS = 1000;
+    private static final long DEFAULT_MAX_JOURNAL_BYTES = 1024 * 1024;
+    private static final long DEFAULT_MAX_WRITE_DELAY_MILLIS = 50;
+    private static final String LS = System.lineSeparator();
+
+    // Changes are appended to the journal of this generation.
+    private long generation = 0;
+    // Generation of the newest snapshot on disk. Guarded by this.
+    private long snapshotGeneration = 0;
+    private int journalRecords = 0;
+    private long journalBytes = 0;
+    private int maxJournalRecords = DEFAULT_MAX_JOURNAL_RECORDS;
+    private long maxJournalBytes = DEFAULT_MAX_JOURNAL_BYTES;
+
+    private boolean isWriteBehind = false;
+    private long maxWriteDelayMillis = DEFAULT_MAX_WRITE_DELAY_MILLIS;
+    // Journal records waiting to be written in write-behind mode. Guarded by itself.
+    private final List<JournalRecord> pendingRecords = new ArrayList<>();
+    private boolean isFlushScheduled = false;
+    private volatile SparkException writeError;
+
+    // In deferred mode, changes are only noted, and written as one snapshot by checkpoint.
+    private boolean isDeferred = false;
+    private boolean hasDeferredChanges = false;
+
+    private volatile Durability durability = Durability.SYNC;
+    // Journals written since the last group commit.
+    private final Set<Path> unsyncedJournals = ConcurrentHashMap.newKeySet();
+    private ScheduledFuture<?> groupCommit;
+
+    // All background disk writes run on this one thread, so they happen in the order they were queued.
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "spark-storage-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Future<?> pendingCompaction;
+
+    /**
+     * A journal line together with the generation of the journal it belongs to.
+     */
+    private static class JournalRecord {
+        private final long generation;
+        private final String line;
+
+        JournalRecord(long generation, String line) {
+            this.generation = generation;
+            this.line = line;
+        }
+    }
 
     /**
      * Creates a {@code Storage} that reads/writes tasks at the given file path.
      * @param filePath Path to the save file {@code data/spark.txt}.
      */
     public Storage(Path filePath) {
+        this(filePath, Layout.SINGLE_FILE);
+    }
+
+    /**
+     * Creates a {@code Storage} that reads/writes tasks at the given file path, using the given layout.
+     * <p>
+     * In the journaled layout, each change is appended to a journal file next to the save file
+     * (e.g. {@code data/spark.txt.0.journal}), and the save file only holds the last full snapshot.
+     * Once a journal grows past the compaction thresholds, a fresh snapshot is written in the
+     * background and the journal is dropped.
+     * <p>
+     * In the sharded layout, the tasks are kept in a {@code data/spark.txt.segments} folder instead,
+     * and a change only rewrites the segment holding the task.
+     *
+     * @param filePath Path to the save file {@code data/spark.txt}.
+     * @param layout How the tasks are spread over files.
+     */
+    public Storage(Path filePath, Layout layout) {
         this.filePath = filePath;
+        this.layout = layout;
+        if (layout == Layout.SHARDED) {
+            this.shards = new ShardedTaskFiles(this, segmentsFolder());
+        }
+    }
+
+    /**
+     * Sets how large the journal may grow before it is compacted into a new snapshot.
+     * <p>
+     * The same record limit applies at load time: if more records than this had to be replayed,
+     * a compaction is started straight away so the next startup is fast again.
+     *
+     * @param maxRecords Maximum number of journal records before compacting.
+     * @param maxBytes Maximum journal size in bytes before compacting.
+     */
+    public void setCompactionThresholds(int maxRecords, long maxBytes) {
+        assert maxRecords > 0 && maxBytes > 0 : "compaction thresholds should be positive";
+        this.maxJournalRecords = maxRecords;
+        this.maxJournalBytes = maxBytes;
     }
 
     /**
-     * Saves the given task list to disk.
+     * Turns write-behind mode on or off. Only has an effect in journaled mode.
+     * <p>
+     * In write-behind mode, changes are queued in memory and the calling thread returns straight away.
+     * A background thread writes everything queued within {@code maxDelayMillis} of the first change
+     * as one append, so a burst of commands costs a single write. Call {@link #flush()} before
+     * exiting, and {@link #checkWriteError()} to find out about failed background writes.
+     *
+     * @param isEnabled {@code true} to queue changes instead of writing them immediately.
+     * @param maxDelayMillis The longest a change may wait in memory before it is written.
+     */
+    public void setWriteBehind(boolean isEnabled, long maxDelayMillis) {
+        assert maxDelayMillis >= 0 : "write delay should not be negative";
+        this.isWriteBehind = isEnabled;
+        this.maxWriteDelayMillis = maxDelayMillis;
+    }
+
+    /**
+     * Sets when writes are forced to disk.
+     *
+     * @param durability The durability policy.
+     * @param groupCommitMillis How often journal appends are forced to disk with {@link Durability#GROUP_COMMIT}.
+     *                          Ignored for the other policies.
+     */
+    public void setDurability(Durability durability, long groupCommitMillis) {
+        this.durability = durability;
+        if (groupCommit != null) {
+            groupCommit.cancel(false);
+            groupCommit = null;
+        }
+        if (durability == Durability.GROUP_COMMIT) {
+            assert groupCommitMillis > 0 : "group commit interval should be positive";
+            groupCommit = writer.scheduleWithFixedDelay(this::syncJournals,
+                    groupCommitMillis, groupCommitMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Forces every journal written since the last group commit to disk. Runs on the writer thread.
+     */
+    private void syncJournals() {
+        for (Path journal : unsyncedJournals) {
+            unsyncedJournals.remove(journal);
+            try (FileChannel channel = FileChannel.open(journal, WRITE)) {
+                channel.force(false);
+            } catch (NoSuchFileException e) {
+                // already folded into a snapshot and deleted
+            } catch (IOException e) {
+                writeError = new SparkException("Failed to save tasks: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes every queued change to disk and waits until it is done.
+     * With {@link Durability#GROUP_COMMIT}, also forces the journal to disk.
+     *
+     * @throws SparkException If a queued change could not be written.
+     */
+    public void flush() throws SparkException {
+        if (isWriteBehind || durability == Durability.GROUP_COMMIT) {
+            try {
+                writer.submit(() -> {
+                    flushPending();
+                    syncJournals();
+                }).get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new SparkException("Failed to save tasks: " + e.getMessage());
+            }
+        }
+        checkWriteError();
+    }
+
+    /**
+     * Reports a failed background write, if there was one since the last check.
+     * <p>
+     * Changes that failed to be written stay queued and are retried with the next write,
+     * so this only reports changes that have not reached the disk yet.
+     *
+     * @throws SparkException If the last background write failed.
+     */
+    public void checkWriteError() throws SparkException {
+        SparkException error = writeError;
+        if (error != null) {
+            writeError = null;
+            throw error;
+        }
+    }
+
+    /**
+     * Turns deferred mode on or off, e.g. while running a script of many commands.
+     * <p>
+     * In deferred mode, {@link #save} and the {@code saveX} methods write nothing and only note that
+     * the tasks changed. {@link #checkpoint} then writes all changes so far as one full snapshot.
+     * A list from {@link #loadLazily} keeps every page changed since the last checkpoint in memory
+     * until then, so deferring many changes to a large list can still take a lot of memory.
+     *
+     * @param isEnabled {@code true} to defer writes until the next checkpoint.
+     */
+    public void setDeferred(boolean isEnabled) {
+        this.isDeferred = isEnabled;
+    }
+
+    /**
+     * Writes the changes deferred since the last checkpoint as one full snapshot.
+     * Does nothing if there are none.
+     *
+     * @param tasks The task list the deferred changes were made to.
+     * @throws SparkException If writing to disk fails.
+     */
+    public void checkpoint(TaskList tasks) throws SparkException {
+        if (!hasDeferredChanges) {
+            return;
+        }
+        saveNow(tasks);
+        hasDeferredChanges = false;
+    }
+
+    /**
+     * Sets the format used for the next snapshots.
+     * <p>
+     * Loading detects the format of the existing save file on its own, so this only needs to be
+     * called to switch formats.
+     *
+     * @param format The format to write snapshots in.
+     */
+    public void setFormat(Format format) {
+        this.format = format;
+    }
+
+    /**
+     * Rewrites a text save file in the binary format.
+     * <p>
+     * The save file and any journals are loaded and written back as a single binary snapshot,
+     * and later saves keep using the binary format.
+     *
+     * @return {@code true} if a text save file was migrated, {@code false} if there was nothing to migrate.
+     * @throws SparkException If the existing file cannot be loaded or the new one cannot be written.
+     */
+    public boolean migrateToBinary() throws SparkException {
+        if (layout == Layout.SHARDED) {
+            importSaveFile();
+            if (!shards.exists()) {
+                format = Format.BINARY;
+                return false;
+            }
+            // Only reads the manifest and the format of the first segment.
+            shards.loadLazily(1);
+            if (format == Format.BINARY) {
+                return false;
+            }
+            TaskList tasks = shards.load(new TaskList());
+            format = Format.BINARY;
+            save(tasks);
+            return true;
+        }
+
+        try {
+            if (!Files.exists(filePath) || BinaryTaskFormat.isBinary(filePath)) {
+                format = Format.BINARY;
+                return false;
+            }
+        } catch (IOException e) {
+            throw new SparkException("Failed to load tasks: " + e.getMessage());
+        }
+
+        TaskList tasks = load();
+        format = Format.BINARY;
+        save(tasks);
+        return true;
+    }
+
+    /**
+     * Saves the given task list to disk as a full snapshot.
+     * <p>
+     * In journaled mode, the existing journals are cleared afterwards, since the snapshot already
+     * contains their changes. In deferred mode, only notes the change (see {@link #setDeferred}).
      * @param tasks The taskList to be saved
      * @throws SparkException If an {@link IOException} occurs while writing the file.
      */
     public void save(TaskList tasks) throws SparkException {
-        try {
-            ensureDataFolderExists();
+        if (defer()) {
+            return;
+        }
+        saveNow(tasks);
+    }
 
-            ArrayList<String> lines = new ArrayList<>();
-            for (int i = 0; i < tasks.getSize(); i++) {
-                Task t = tasks.getTask(i);
-                lines.add(t.toSaveString());
+    private void saveNow(TaskList tasks) throws SparkException {
+        try {
+            if (layout == Layout.SHARDED) {
+                shards.rewriteAll(tasks);
+                return;
+            }
+            if (layout == Layout.JOURNALED) {
+                startNextGeneration();
+                writeSnapshot(encodeSnapshot(tasks, generation), generation);
+                return;
             }
 
-            Files.write(filePath, lines, CREATE, TRUNCATE_EXISTING);
+            writeAtomically(encodeSnapshot(tasks, 0));
 
         } catch (IOException e) {
             throw new SparkException("Failed to save tasks: " + e.getMessage());
@@ -61,27 +397,496 @@ public class Storage {
     }
 
     /**
-     * Loads tasks from disk and returns them as a list.
+     * Records that a task was added to the end of the list.
+     *
+     * @param tasks The task list after the change, saved in full when not journaled.
+     * @param task The task that was added.
+     * @throws SparkException If writing to disk fails.
+     */
+    public void saveAdd(TaskList tasks, Task task) throws SparkException {
+        if (defer()) {
+            return;
+        }
+        if (layout == Layout.SHARDED) {
+            shards.writeAdded(tasks);
+            return;
+        }
+        commit(tasks, "ADD | " + TextTaskFormat.toLine(task));
+    }
+
+    /**
+     * Records that the task at the given index was marked as done.
+     *
+     * @param tasks The task list after the change, saved in full when not journaled.
+     * @param index The 0-based index of the task.
+     * @throws SparkException If writing to disk fails.
+     */
+    public void saveMark(TaskList tasks, int index) throws SparkException {
+        if (defer()) {
+            return;
+        }
+        if (layout == Layout.SHARDED) {
+            shards.writeChanged(tasks, index);
+            return;
+        }
+        commit(tasks, "MARK | " + index);
+    }
+
+    /**
+     * Records that the task at the given index was marked as not done.
+     *
+     * @param tasks The task list after the change, saved in full when not journaled.
+     * @param index The 0-based index of the task.
+     * @throws SparkException If writing to disk fails.
+     */
+    public void saveUnmark(TaskList tasks, int index) throws SparkException {
+        if (defer()) {
+            return;
+        }
+        if (layout == Layout.SHARDED) {
+            shards.writeChanged(tasks, index);
+            return;
+        }
+        commit(tasks, "UNMARK | " + index);
+    }
+
+    /**
+     * Records that the task at the given index was deleted.
+     *
+     * @param tasks The task list after the change, saved in full when not journaled.
+     * @param index The 0-based index of the deleted task.
+     * @throws SparkException If writing to disk fails.
+     */
+    public void saveDelete(TaskList tasks, int index) throws SparkException {
+        if (defer()) {
+            return;
+        }
+        if (layout == Layout.SHARDED) {
+            shards.writeDeleted(tasks, index);
+            return;
+        }
+        commit(tasks, "DELETE | " + index);
+    }
+
+    /**
+     * Records that the tasks at the given indices were marked as done, in a single write.
+     *
+     * @param tasks The task list after the change, saved in full when not journaled.
+     * @param indices The distinct 0-based indices of the tasks, in increasing order.
+     * @throws SparkException If writing to disk fails.
+     */
+    public void saveMarkAll(TaskList tasks, int[] indices) throws SparkException {
+        if (defer()) {
+            return;
+        }
+        if (layout == Layout.SHARDED) {
+            shards.writeChangedAll(tasks, indices);
+            return;
+        }
+        commit(tasks, "MARK | " + formatIndices(indices));
+    }
+
+    /**
+     * Records that the tasks at the given indices were marked as not done, in a single write.
+     *
+     * @param tasks The task list after the change, saved in full when not journaled.
+     * @param indices The distinct 0-based indices of the tasks, in increasing order.
+     * @throws SparkException If writing to disk fails.
+     */
+    public void saveUnmarkAll(TaskList tasks, int[] indices) throws SparkException {
+        if (defer()) {
+            return;
+        }
+        if (layout == Layout.SHARDED) {
+            shards.writeChangedAll(tasks, indices);
+            return;
+        }
+        commit(tasks, "UNMARK | " + formatIndices(indices));
+    }
+
+    /**
+     * Records that the tasks at the given indices were deleted, in a single write.
+     *
+     * @param tasks The task list after the change, saved in full when not journaled.
+     * @param indices The distinct 0-based indices the deleted tasks had, in increasing order.
+     * @throws SparkException If writing to disk fails.
+     */
+    public void saveDeleteAll(TaskList tasks, int[] indices) throws SparkException {
+        if (defer()) {
+            return;
+        }
+        if (layout == Layout.SHARDED) {
+            shards.writeDeletedAll(tasks, indices);
+            return;
+        }
+        commit(tasks, "DELETE | " + formatIndices(indices));
+    }
+
+    /**
+     * Records that a task was inserted at the given index, e.g. when its deletion was undone.
+     *
+     * @param tasks The task list after the change, saved in full when not journaled.
+     * @param index The 0-based index of the inserted task.
+     * @throws SparkException If writing to disk fails.
+     */
+    public void saveInsert(TaskList tasks, int index) throws SparkException {
+        if (defer()) {
+            return;
+        }
+        if (layout == Layout.SHARDED) {
+            shards.writeInserted(tasks, index);
+            return;
+        }
+        commit(tasks, "INSERT | " + index + " | " + TextTaskFormat.toLine(tasks.getTask(index)));
+    }
+
+    /**
+     * Records that tasks were inserted at the given indices, e.g. when deleting them was undone, in a single write.
+     *
+     * @param tasks The task list after the change, saved in full when not journaled.
+     * @param indices The distinct 0-based indices of the inserted tasks, in increasing order.
+     * @throws SparkException If writing to disk fails.
+     */
+    public void saveInsertAll(TaskList tasks, int[] indices) throws SparkException {
+        if (defer()) {
+            return;
+        }
+        if (layout == Layout.SHARDED) {
+            shards.writeInsertedAll(tasks, indices);
+            return;
+        }
+        if (layout != Layout.JOURNALED) {
+            save(tasks);
+            return;
+        }
+        // Replaying the records in order inserts each task where it is now.
+        List<String> records = new ArrayList<>(indices.length);
+        for (int index : indices) {
+            records.add("INSERT | " + index + " | " + TextTaskFormat.toLine(tasks.getTask(index)));
+        }
+        commit(tasks, records);
+    }
+
+    /**
+     * Records that the task list was sorted by date/time.
+     *
+     * @param tasks The task list after the change, saved in full when not journaled.
+     * @throws SparkException If writing to disk fails.
+     */
+    public void saveSort(TaskList tasks) throws SparkException {
+        if (defer()) {
+            return;
+        }
+        if (layout == Layout.SHARDED) {
+            save(tasks);
+            return;
+        }
+        commit(tasks, "SORT");
+    }
+
+    /**
+     * Notes a change instead of writing it if writes are deferred.
+     *
+     * @return Whether the change was deferred.
+     */
+    private boolean defer() {
+        if (isDeferred) {
+            hasDeferredChanges = true;
+        }
+        return isDeferred;
+    }
+
+    /**
+     * Appends a single journal record, or saves the whole list when not journaled.
+     * Starts a compaction if the journal has grown past its thresholds.
+     */
+    private void commit(TaskList tasks, String record) throws SparkException {
+        if (layout != Layout.JOURNALED) {
+            save(tasks);
+            return;
+        }
+        commit(tasks, List.of(record));
+    }
+
+    /**
+     * Appends journal records together in one write, or queues them in write-behind mode.
+     * Starts a compaction if the journal has grown past its thresholds.
+     */
+    private void commit(TaskList tasks, List<String> records) throws SparkException {
+        if (isWriteBehind) {
+            for (String record : records) {
+                enqueue(record);
+            }
+        } else {
+            try {
+                appendToJournal(generation, records);
+            } catch (IOException e) {
+                throw new SparkException("Failed to save tasks: " + e.getMessage());
+            }
+        }
+        for (String record : records) {
+            journalRecords++;
+            journalBytes += record.length() + 1;
+        }
+
+        if (journalRecords >= maxJournalRecords || journalBytes >= maxJournalBytes) {
+            compact(tasks);
+        }
+    }
+
+    private void appendToJournal(long journalGeneration, List<String> lines) throws IOException {
+        ensureDataFolderExists();
+        Path journal = journalPath(journalGeneration);
+        byte[] bytes = (String.join(LS, lines) + LS).getBytes(StandardCharsets.UTF_8);
+        try (FileChannel channel = FileChannel.open(journal, CREATE, WRITE, APPEND)) {
+            writeFully(channel, ByteBuffer.wrap(bytes));
+            if (durability == Durability.SYNC) {
+                channel.force(false);
+            }
+        }
+        if (durability == Durability.GROUP_COMMIT) {
+            unsyncedJournals.add(journal);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Replaces the save file with the given contents, so that a crash leaves either the old or the new
+     * file in place, never a partial one.
      * <p>
-     * If the save file does not exist, returns an empty list.
-     * @return A list of loaded tasks. Empty list if no save file is found.
+     * The contents are written to a temporary file, forced to disk unless the policy is
+     * {@link Durability#OS_BUFFERED}, and then atomically moved over the save file.
+     */
+    private void writeAtomically(ByteBuffer contents) throws IOException {
+        ensureDataFolderExists();
+        writeAtomically(filePath, contents);
+    }
+
+    /**
+     * Replaces the target file with the given contents in the same way as the save file.
+     *
+     * @param target The file to replace. Its folder must already exist.
+     * @param contents The new contents.
+     * @throws IOException If writing or moving the file fails.
+     */
+    void writeAtomically(Path target, ByteBuffer contents) throws IOException {
+        Path tempPath = target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(tempPath, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            writeFully(channel, contents);
+            if (durability != Durability.OS_BUFFERED) {
+                channel.force(true);
+            }
+        }
+        Files.move(tempPath, target, REPLACE_EXISTING, ATOMIC_MOVE);
+
+        if (durability != Durability.OS_BUFFERED) {
+            syncFolder(target.toAbsolutePath().getParent());
+        }
+    }
+
+    /**
+     * Forces a rename inside the folder to disk by syncing the folder.
+     */
+    private static void syncFolder(Path folder) {
+        try (FileChannel channel = FileChannel.open(folder, READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Folders cannot be opened for syncing on every platform (e.g. Windows). The move is still atomic.
+        }
+    }
+
+    /**
+     * Queues a journal record and schedules a flush, unless one is already scheduled.
+     */
+    private void enqueue(String record) {
+        synchronized (pendingRecords) {
+            pendingRecords.add(new JournalRecord(generation, record));
+            if (!isFlushScheduled) {
+                isFlushScheduled = true;
+                writer.schedule(this::flushPending, maxWriteDelayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Writes all queued records, with one append per journal. Runs on the writer thread.
+     * <p>
+     * If a write fails, the records that were not written are put back at the front of the queue
+     * and the error is kept for {@link #checkWriteError()}.
+     */
+    private void flushPending() {
+        List<JournalRecord> batch;
+        synchronized (pendingRecords) {
+            batch = new ArrayList<>(pendingRecords);
+            pendingRecords.clear();
+            isFlushScheduled = false;
+        }
+
+        int written = 0;
+        try {
+            while (written < batch.size()) {
+                long journalGeneration = batch.get(written).generation;
+                List<String> lines = new ArrayList<>();
+                int end = written;
+                while (end < batch.size() && batch.get(end).generation == journalGeneration) {
+                    lines.add(batch.get(end).line);
+                    end++;
+                }
+                appendToJournal(journalGeneration, lines);
+                written = end;
+            }
+        } catch (IOException e) {
+            synchronized (pendingRecords) {
+                pendingRecords.addAll(0, batch.subList(written, batch.size()));
+            }
+            writeError = new SparkException("Failed to save tasks: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Starts writing a fresh snapshot of the given tasks in the background.
+     * <p>
+     * The tasks are serialized on the calling thread, so the list may be changed again as soon as
+     * this returns. Later changes go to the journal of the next generation, and the current journal
+     * is deleted once the new snapshot has been moved into place.
+     * Does nothing if a compaction is already running.
+     *
+     * @param tasks The task list whose current state should become the new snapshot.
+     */
+    private void compact(TaskList tasks) {
+        if (pendingCompaction != null && !pendingCompaction.isDone()) {
+            return;
+        }
+
+        startNextGeneration();
+        long snapshotGen = generation;
+        // Copied out of the encoder, since the caller may encode another snapshot before this one is written.
+        ByteBuffer encoded = encodeSnapshot(tasks, snapshotGen);
+        ByteBuffer snapshot = ByteBuffer.allocate(encoded.remaining()).put(encoded).flip();
+        pendingCompaction = writer.submit(() -> {
+            flushPending();
+            try {
+                writeSnapshot(snapshot, snapshotGen);
+            } catch (IOException e) {
+                // The journals are only deleted after a successful snapshot, so nothing is lost.
+                // The next compaction will try again.
+            }
+        });
+    }
+
+    /**
+     * Waits for any running compaction to finish.
+     */
+    void awaitCompaction() throws InterruptedException, ExecutionException {
+        if (pendingCompaction != null) {
+            pendingCompaction.get();
+        }
+    }
+
+    private void startNextGeneration() {
+        generation++;
+        journalRecords = 0;
+        journalBytes = 0;
+    }
+
+    /**
+     * Replaces the save file with the given snapshot and deletes the journals it covers.
+     * <p>
+     * The snapshot is written with {@link #writeAtomically(ByteBuffer)}, so a crash leaves either the old
+     * or the new snapshot in place.
+     *
+     * @param snapshot The encoded snapshot, including its generation.
+     * @param newGeneration The generation of the snapshot.
+     * @throws IOException If writing or moving the file fails.
+     */
+    private synchronized void writeSnapshot(ByteBuffer snapshot, long newGeneration) throws IOException {
+        if (newGeneration <= snapshotGeneration) {
+            return; // a newer snapshot has already been written
+        }
+
+        writeAtomically(snapshot);
+        deleteJournalsBefore(newGeneration, snapshotGeneration);
+        snapshotGeneration = newGeneration;
+    }
+
+    /**
+     * Deletes the journals from {@code oldest} up to, but excluding, {@code generationLimit}.
+     */
+    private void deleteJournalsBefore(long generationLimit, long oldest) throws IOException {
+        for (long g = oldest; g < generationLimit; g++) {
+            Files.deleteIfExists(journalPath(g));
+        }
+    }
+
+    private Path journalPath(long journalGeneration) {
+        return filePath.resolveSibling(filePath.getFileName() + "." + journalGeneration + JOURNAL_SUFFIX);
+    }
+
+    /**
+     * Encodes the tasks as a snapshot in the current save format, using the encoder owned by this storage.
+     * <p>
+     * Text snapshots are preceded by a generation header in journaled mode.
+     *
+     * @return The encoded snapshot, valid until the next call.
+     */
+    private ByteBuffer encodeSnapshot(TaskList tasks, long snapshotGen) {
+        return encodeRange(tasks, 0, tasks.getSize(), snapshotGen);
+    }
+
+    /**
+     * Encodes the tasks from index {@code from} up to, but excluding, {@code to} in the current save format.
+     *
+     * @return The encoded tasks, valid until the next encode.
+     */
+    ByteBuffer encodeRange(TaskList tasks, int from, int to, long snapshotGen) {
+        TaskEncoder encoder = (format == Format.BINARY) ? binaryEncoder : textEncoder;
+        return encoder.encodeSnapshot(tasks, from, to, snapshotGen);
+    }
+
+    /**
+     * Loads tasks from disk and returns them as a task list.
+     * <p>
+     * The last snapshot is read from the save file, in whichever format it was written, and later
+     * saves keep using that format. In journaled mode, the journals from the
+     * snapshot's generation onwards are then replayed on top of it.
+     * If neither exists, returns an empty list.
+     * @return The loaded tasks. Empty list if no save file is found.
      * @throws SparkException If an {@link IOException} occurs while reading the file,
      * or if any line in the file is corrupted.
      */
-    public List<Task> load() throws SparkException {
-        if (!Files.exists(filePath)) {
-            return new ArrayList<>();
+    public TaskList load() throws SparkException {
+        return load(new TaskList());
+    }
+
+    /**
+     * Loads tasks from disk into the given empty task list, as {@link #load()} does.
+     * This allows the tasks to be held in another kind of list, e.g. a {@link ColumnarTaskList}.
+     *
+     * @param loadedTasks The empty list to add the loaded tasks to.
+     * @return The given list, holding the loaded tasks.
+     * @throws SparkException If the saved tasks cannot be read.
+     */
+    public TaskList load(TaskList loadedTasks) throws SparkException {
+        assert loadedTasks.getSize() == 0 : "tasks should be loaded into an empty list";
+        if (layout == Layout.SHARDED) {
+            importSaveFile();
+            return shards.load(loadedTasks);
         }
 
+        importSegments();
         try {
-            List<String> lines = Files.readAllLines(filePath);
-            List<Task> loadedTasks = new ArrayList<>();
-            for (String line : lines) {
-                if (line.isEmpty()) {
-                    continue;
-                }
-                Task task = parseLine(line);
-                loadedTasks.add(task);
+            long loadedGeneration = 0;
+            if (Files.exists(filePath)) {
+                loadedGeneration = decodeFile(filePath, loadedTasks);
+            }
+
+            if (layout == Layout.JOURNALED) {
+                replayJournals(loadedTasks, loadedGeneration);
             }
 
             return loadedTasks;
@@ -92,67 +897,272 @@ public class Storage {
     }
 
     /**
-     * Ensures that the data folder exists, creating it if necessary.
+     * Loads the tasks, reading them from disk only once they are needed where the layout allows it.
+     * <p>
+     * In the sharded layout, only the manifest is read here, and at most {@code maxResidentPages}
+     * segments are held in memory at a time (see {@link PagedTaskList}). The other layouts load
+     * every task, as {@link #load()} does.
      *
-     * @throws IOException If the folder cannot be created.
+     * @param maxResidentPages The number of segments to keep in memory at most.
+     * @return The loaded tasks. Empty list if no save file is found.
+     * @throws SparkException If the saved tasks cannot be read.
      */
-    private void ensureDataFolderExists() throws IOException {
-        assert filePath != null : "filePath should be set";
-        Path data = filePath.getParent();
-        if (!Files.exists(data)) {
-            Files.createDirectories(data);
+    public TaskList loadLazily(int maxResidentPages) throws SparkException {
+        if (layout != Layout.SHARDED) {
+            return load();
+        }
+        importSaveFile();
+        return shards.loadLazily(maxResidentPages);
+    }
+
+    /**
+     * Splits a save file written in one of the other layouts into segments, if there are no segments yet.
+     * The old save file and journals are left in place, but are no longer read.
+     */
+    private void importSaveFile() throws SparkException {
+        if (shards.exists() || !(Files.exists(filePath) || Files.exists(journalPath(0)))) {
+            return;
+        }
+
+        Storage saveFile = new Storage(filePath, Layout.JOURNALED);
+        TaskList tasks = saveFile.load();
+        format = saveFile.format;
+        try {
+            shards.rewriteAll(tasks);
+        } catch (IOException e) {
+            throw new SparkException("Failed to save tasks: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Moves tasks saved in the sharded layout back into the save file, if there are segments, e.g. after
+     * switching back from that layout. The old save file and journals, which the segments were made from,
+     * are replaced by a snapshot of the segments, and the segments are deleted afterwards so that they are
+     * not imported again over later changes.
+     */
+    private void importSegments() throws SparkException {
+        ShardedTaskFiles segments = new ShardedTaskFiles(this, segmentsFolder());
+        if (!segments.exists()) {
+            return;
         }
+
+        TaskList tasks = segments.load(new TaskList());
+        try {
+            ensureDataFolderExists();
+            try (DirectoryStream<Path> journals = Files.newDirectoryStream(filePath.getParent(),
+                    filePath.getFileName() + ".*" + JOURNAL_SUFFIX)) {
+                for (Path journal : journals) {
+                    Files.delete(journal);
+                }
+            }
+            saveNow(tasks);
+            segments.delete();
+        } catch (IOException e) {
+            throw new SparkException("Failed to save tasks: " + e.getMessage());
+        }
+    }
+
+    private Path segmentsFolder() {
+        return filePath.resolveSibling(filePath.getFileName() + ".segments");
     }
 
     /**
-     * Parses a single line from the save file and converts it into a {@link Task}.
+     * Decodes a save file or segment in whichever format it was written, and keeps using that format.
      *
-     * @param line A line from the save file in the format {@code "<taskType> | <done> | <data>"}.
-     * @return The parsed {@link Task} object.
-     * @throws SparkException If the line format is corrupted or invalid.
+     * @param file The file to decode.
+     * @param tasks The task list to add the decoded tasks to.
+     * @return The snapshot generation stored in the file.
+     * @throws SparkException If the file is corrupted.
+     */
+    long decodeFile(Path file, TaskList tasks) throws IOException, SparkException {
+        ByteBuffer contents = readFile(file);
+        if (BinaryTaskFormat.isBinary(contents)) {
+            format = Format.BINARY;
+            return BinaryTaskFormat.decode(contents, tasks);
+        }
+        format = Format.TEXT;
+        return TextTaskFormat.decode(contents, tasks);
+    }
+
+    /**
+     * Returns the contents of a file without copying them onto the heap where possible.
+     * <p>
+     * Files of at least {@value #MAP_THRESHOLD_BYTES} bytes are memory-mapped, so the tasks are decoded
+     * straight from the page cache. Smaller files are simply read into a byte array.
+     *
+     * @throws SparkException If the file is too large to be mapped in one piece.
+     */
+    static ByteBuffer readFile(Path file) throws IOException, SparkException {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new SparkException("Saved file is too large to load");
+            }
+            if (size < MAP_THRESHOLD_BYTES) {
+                return ByteBuffer.wrap(Files.readAllBytes(file));
+            }
+            // The mapping stays valid after the channel is closed, and is released once the buffer is collected.
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    /**
+     * Replays every journal from the snapshot's generation onwards, in order.
+     * <p>
+     * More than one journal is only left behind if the program stopped while a compaction was
+     * running. Journals older than the snapshot were already folded into it and are removed.
      */
-    private Task parseLine(String line) throws SparkException {
-        String[] parts = line.split(" \\| ");
-        if (parts.length < 3) {
-            throw new SparkException("Saved file was corrupted");
+    private void replayJournals(TaskList tasks, long loadedGeneration) throws IOException, SparkException {
+        synchronized (this) {
+            snapshotGeneration = loadedGeneration;
+        }
+        generation = loadedGeneration;
+        journalRecords = 0;
+        journalBytes = 0;
+        long staleGeneration = loadedGeneration - 1;
+        while (staleGeneration >= 0 && Files.deleteIfExists(journalPath(staleGeneration))) {
+            staleGeneration--;
         }
 
-        String taskType = parts[0];
-        String doneStatus = parts[1];
-        String description = parts[2];
+        int replayedRecords = 0;
+        for (long g = loadedGeneration; Files.exists(journalPath(g)); g++) {
+            generation = g;
+            journalRecords = 0;
+            journalBytes = 0;
+            for (String record : readJournal(journalPath(g))) {
+                if (record.isEmpty()) {
+                    continue;
+                }
+                replay(tasks, record);
+                journalRecords++;
+                journalBytes += record.length() + 1;
+            }
+            replayedRecords += journalRecords;
+        }
 
-        Task task;
-        switch (taskType) {
-        case "T":
-            task = new Todo(description);
-            break;
+        if (replayedRecords >= maxJournalRecords) {
+            compact(tasks);
+        }
+    }
 
-        case "D":
-            if (parts.length < 4) {
-                throw new SparkException("Deadline task data was corrupted");
+    /**
+     * Reads the complete records of a journal.
+     * <p>
+     * A crash in the middle of an append can leave the last record without its line break. That record
+     * was never fully written, so it is skipped and cut off the file, and new records start on a fresh line.
+     */
+    private List<String> readJournal(Path journal) throws IOException {
+        byte[] bytes = Files.readAllBytes(journal);
+        int complete = bytes.length;
+        while (complete > 0 && bytes[complete - 1] != '\n') {
+            complete--;
+        }
+        if (complete < bytes.length) {
+            try (FileChannel channel = FileChannel.open(journal, WRITE)) {
+                channel.truncate(complete);
             }
-            LocalDateTime deadlineDateTime = LocalDateTime.parse(parts[3], DEADLINE_FORMAT);
-            task = new Deadline(description, deadlineDateTime);
-            break;
+        }
+        return new String(bytes, 0, complete, StandardCharsets.UTF_8).lines().collect(Collectors.toList());
+    }
+
+    /**
+     * Applies a single journal record to the task list.
+     *
+     * @param tasks The task list being rebuilt.
+     * @param record A journal line in the format {@code "<operation> | <data>"}.
+     * @throws SparkException If the record is corrupted or refers to a missing task.
+     */
+    private void replay(TaskList tasks, String record) throws SparkException {
+        String[] parts = record.split(" \\| ", 2);
+        String operation = parts[0];
+
+        try {
+            switch (operation) {
+            case "ADD":
+                tasks.addTask(TextTaskFormat.parseLine(parts[1]));
+                break;
+
+            case "MARK":
+                tasks.markAll(parseIndices(parts[1]));
+                break;
+
+            case "UNMARK":
+                tasks.unmarkAll(parseIndices(parts[1]));
+                break;
 
-        case "E":
-            if (parts.length < 5) {
-                throw new SparkException("Event task data was corrupted");
+            case "DELETE":
+                tasks.deleteAll(parseIndices(parts[1]));
+                break;
+
+            case "INSERT": {
+                String[] insert = parts[1].split(" \\| ", 2);
+                tasks.insertTask(Integer.parseInt(insert[0]), TextTaskFormat.parseLine(insert[1]));
+                break;
             }
-            task = new Event(description, parts[3], parts[4]);
-            break;
 
-        default:
-            throw new SparkException("Unknown task type in save data: " + taskType);
+            case "SORT":
+                tasks.sortByDateTime();
+                break;
+
+            default:
+                throw new SparkException("Saved journal was corrupted");
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            throw new SparkException("Saved journal was corrupted");
         }
+    }
 
-        if (doneStatus.equals("1")) {
-            task.markAsDone();
-        } else {
-            task.markAsNotDone();
+    /**
+     * Writes increasing indices as a comma-separated list in which runs are written as ranges,
+     * e.g. {@code 0-4,7,9-20}.
+     */
+    static String formatIndices(int[] indices) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < indices.length; i++) {
+            int first = indices[i];
+            while (i + 1 < indices.length && indices[i + 1] == indices[i] + 1) {
+                i++;
+            }
+            if (text.length() > 0) {
+                text.append(',');
+            }
+            text.append(first);
+            if (indices[i] != first) {
+                text.append('-').append(indices[i]);
+            }
         }
+        return text.toString();
+    }
 
-        return task;
+    /**
+     * Reads indices written by {@link #formatIndices}. A single index, as written by older versions, is also read.
+     */
+    static int[] parseIndices(String text) throws SparkException {
+        List<Integer> indices = new ArrayList<>();
+        for (String entry : text.split(",")) {
+            int dash = entry.indexOf('-');
+            int first = Integer.parseInt(dash < 0 ? entry : entry.substring(0, dash));
+            int last = dash < 0 ? first : Integer.parseInt(entry.substring(dash + 1));
+            if (last < first || (!indices.isEmpty() && first <= indices.get(indices.size() - 1))) {
+                throw new SparkException("Saved journal was corrupted");
+            }
+            for (int index = first; index <= last; index++) {
+                indices.add(index);
+            }
+        }
+        return indices.stream().mapToInt(Integer::intValue).toArray();
     }
 
-}
\ No newline at end of file
+    /**
+     * Ensures that the data folder exists, creating it if necessary.
+     *
+     * @throws IOException If the folder cannot be created.
+     */
+    private void ensureDataFolderExists() throws IOException {
+        assert filePath != null : "filePath should be set";
+        Path data = filePath.getParent();
+        if (!Files.exists(data)) {
+            Files.createDirectories(data);
+        }
+    }
+}
@@ -5,17 +5,19 @@ import java.time.LocalDateTime;
 /**
  * Represents a basic task with a description and a completion status.
  */
-public class Task {
+public class Task implements Cloneable {
     protected String description;
     protected boolean isDone;
+    private long id = 0;
 
     /**
      * Constructs a new task with the given description
      * The task is initially marked as not done.
+     * The description is shared with other tasks through the {@link DescriptionPool}.
      * @param description The description of a task (e.g. read book).
      */
     public Task(String description) {
-        this.description = description;
+        this.description = DescriptionPool.intern(description);
         this.isDone = false;
     }
 
@@ -56,6 +58,17 @@ public class Task {
     }
 
 
+    /**
+     * Writes this task's fields into the given encoder, in the same order as {@link #toSaveString()}.
+     *
+     * @param encoder The encoder of the save format being written.
+     */
+    public void encode(TaskEncoder encoder) {
+        encoder.beginTask('T', isDone);
+        encoder.writeString(description);
+        encoder.endTask();
+    }
+
     /**
      * Checks if this task is marked as done.
      *
@@ -65,6 +78,38 @@ public class Task {
         return this.isDone;
     }
 
+    /**
+     * Returns the stable ID of this task, which does not change when other tasks are deleted or sorted.
+     *
+     * @return The ID, or 0 if the task has not been added to a {@link TaskList} yet.
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Sets the ID of this task. IDs are assigned by {@link TaskList}, or restored from the save file.
+     *
+     * @param id The ID, greater than 0.
+     */
+    void setId(long id) {
+        this.id = id;
+    }
+
+    /**
+     * Returns a copy of this task with the same fields and ID, which can be changed without
+     * affecting this task.
+     *
+     * @return The copy.
+     */
+    Task copy() {
+        try {
+            return (Task) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
     public String getDescription() {
         return this.description;
     }
@@ -0,0 +1,103 @@
+package spark;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps the tasks that have a date/time ordered by it.
+ * <p>
+ * Tasks with the same date/time are kept in the order they were added, which matches their order in
+ * the list as long as the list is only appended to, deleted from and sorted stably by date/time.
+ * Tasks without a date/time are not indexed. Tasks are kept by their ID, so a task can be replaced by a
+ * changed copy of itself without losing its place.
+ */
+public class TaskDateIndex {
+    private final TreeMap<LocalDateTime, Map<Long, Task>> tasksByDateTime = new TreeMap<>();
+    private int size = 0;
+
+    /**
+     * Adds a task, if it has a date/time.
+     *
+     * @param task The task to add.
+     */
+    public void add(Task task) {
+        LocalDateTime dateTime = task.getDateTime();
+        if (dateTime != null
+                && tasksByDateTime.computeIfAbsent(dateTime, d -> new LinkedHashMap<>())
+                        .putIfAbsent(task.getId(), task) == null) {
+            size++;
+        }
+    }
+
+    /**
+     * Removes a task that was added before.
+     *
+     * @param task The task to remove.
+     */
+    public void remove(Task task) {
+        LocalDateTime dateTime = task.getDateTime();
+        if (dateTime == null) {
+            return;
+        }
+        Map<Long, Task> tasks = tasksByDateTime.get(dateTime);
+        if (tasks != null && tasks.remove(task.getId()) != null) {
+            size--;
+            if (tasks.isEmpty()) {
+                tasksByDateTime.remove(dateTime);
+            }
+        }
+    }
+
+    /**
+     * Replaces a task that was added before with a copy of it, keeping its place in the order.
+     *
+     * @param replacement The copy, with the same ID and date/time as the task it replaces.
+     */
+    public void replace(Task replacement) {
+        LocalDateTime dateTime = replacement.getDateTime();
+        if (dateTime == null) {
+            return;
+        }
+        Map<Long, Task> tasks = tasksByDateTime.get(dateTime);
+        if (tasks != null) {
+            tasks.replace(replacement.getId(), replacement);
+        }
+    }
+
+    /**
+     * Returns the number of indexed tasks, i.e. those with a date/time.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns all indexed tasks, earliest first.
+     */
+    public List<Task> getAll() {
+        return flatten(tasksByDateTime.values(), size);
+    }
+
+    /**
+     * Returns the tasks whose date/time is strictly before the given one, earliest first.
+     *
+     * @param dateTime The exclusive upper bound.
+     * @return The matching tasks.
+     */
+    public List<Task> getBefore(LocalDateTime dateTime) {
+        return flatten(tasksByDateTime.headMap(dateTime, false).values(), 0);
+    }
+
+    private static List<Task> flatten(Collection<Map<Long, Task>> maps, int expectedSize) {
+        List<Task> tasks = new ArrayList<>(expectedSize);
+        for (Map<Long, Task> map : maps) {
+            tasks.addAll(map.values());
+        }
+        return tasks;
+    }
+}
@@ -0,0 +1,164 @@
+package spark;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+
+/**
+ * Writes tasks into a reusable byte buffer in one of the save formats.
+ * <p>
+ * Each task type describes its own fields through {@link Task#encode(TaskEncoder)}, and the
+ * subclass for a format decides how they are laid out. The buffer is kept between snapshots,
+ * so encoding a large list allocates close to nothing per task.
+ * <p>
+ * An encoder is not thread-safe, and the encoded bytes are only valid until the next snapshot.
+ */
+public abstract class TaskEncoder {
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+
+    /**
+     * Writes the ID of the next task, right before its record is started.
+     *
+     * @param id The task ID, or 0 if the task has none.
+     */
+    public abstract void writeId(long id);
+
+    /**
+     * Starts the record for a task.
+     *
+     * @param typeTag The task type, {@code 'T'}, {@code 'D'} or {@code 'E'}.
+     * @param isDone Whether the task is done.
+     */
+    public abstract void beginTask(char typeTag, boolean isDone);
+
+    /**
+     * Writes a text field of the current task.
+     *
+     * @param value The field value.
+     */
+    public abstract void writeString(String value);
+
+    /**
+     * Writes a date/time field of the current task.
+     *
+     * @param value The field value.
+     */
+    public abstract void writeDateTime(LocalDateTime value);
+
+    /**
+     * Ends the record for the current task.
+     */
+    public abstract void endTask();
+
+    /**
+     * Writes whatever the format puts in front of the first task.
+     *
+     * @param taskCount The number of tasks that will follow.
+     * @param generation The snapshot generation.
+     * @param nextId The ID the next new task will get, so that IDs of deleted tasks are not reused.
+     */
+    protected abstract void writeHeader(int taskCount, long generation, long nextId);
+
+    /**
+     * Encodes a full snapshot of the tasks, replacing anything encoded before.
+     *
+     * @param tasks The tasks to encode.
+     * @param generation The snapshot generation.
+     * @return The encoded bytes, valid until the next call.
+     */
+    public ByteBuffer encodeSnapshot(TaskList tasks, long generation) {
+        return encodeSnapshot(tasks, 0, tasks.getSize(), generation);
+    }
+
+    /**
+     * Encodes the tasks from index {@code from} up to, but excluding, {@code to} as a snapshot,
+     * replacing anything encoded before.
+     *
+     * @param tasks The task list holding the tasks.
+     * @param from The index of the first task to encode.
+     * @param to The index after the last task to encode.
+     * @param generation The snapshot generation.
+     * @return The encoded bytes, valid until the next call.
+     */
+    public ByteBuffer encodeSnapshot(TaskList tasks, int from, int to, long generation) {
+        buffer.clear();
+        writeHeader(to - from, generation, tasks.getNextId());
+        for (int i = from; i < to; i++) {
+            Task task = tasks.getTask(i);
+            writeId(task.getId());
+            task.encode(this);
+        }
+        return buffer.duplicate().flip();
+    }
+
+    protected int position() {
+        return buffer.position();
+    }
+
+    protected void putByte(int value) {
+        ensureCapacity(1);
+        buffer.put((byte) value);
+    }
+
+    protected void putBytes(byte[] values) {
+        ensureCapacity(values.length);
+        buffer.put(values);
+    }
+
+    protected void putInt(int value) {
+        ensureCapacity(Integer.BYTES);
+        buffer.putInt(value);
+    }
+
+    protected void putIntAt(int index, int value) {
+        buffer.putInt(index, value);
+    }
+
+    protected void putLong(long value) {
+        ensureCapacity(Long.BYTES);
+        buffer.putLong(value);
+    }
+
+    /**
+     * Writes the characters as UTF-8 without creating an intermediate byte array.
+     */
+    protected void putUtf8(CharSequence value) {
+        int length = value.length();
+        // A char takes at most 3 bytes; a surrogate pair takes 4 bytes for 2 chars.
+        ensureCapacity(length * 3);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?'); // unpaired surrogate, as String.getBytes would do
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (buffer.remaining() >= extra) {
+            return;
+        }
+        int capacity = Math.max(buffer.capacity() * 2, buffer.position() + extra);
+        ByteBuffer larger = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        larger.put(buffer);
+        buffer = larger;
+    }
+}
@@ -0,0 +1,276 @@
+package spark;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Remembers the most recent changes to a {@link TaskList}, so that they can be undone and redone.
+ * <p>
+ * Each change is kept as what is needed to reverse it, rather than as a copy of the list: an added,
+ * deleted or marked task takes one entry whatever the size of the list, a bulk command keeps the
+ * indices it changed, and a sort keeps the IDs in their earlier order. Undoing and redoing apply the reverse or the change again, and save it
+ * through the {@link Storage} the same way the original command did.
+ * <p>
+ * Making a new change forgets the changes that were undone, as in most editors.
+ */
+public class TaskHistory {
+    private enum Kind {
+        ADD, DELETE, MARK, UNMARK, SORT, DELETE_ALL, MARK_ALL, UNMARK_ALL
+    }
+
+    /**
+     * One change, with the position and task it concerned.
+     */
+    private static class Change {
+        private final Kind kind;
+        private final int index;
+        private Task task;
+        private boolean wasDone;
+        private long[] previousOrder;
+        // For bulk changes: the indices, the tasks and whether each task was done before.
+        private int[] indices;
+        private List<Task> tasks;
+        private boolean[] wereDone;
+
+        private Change(Kind kind, int index, Task task) {
+            this.kind = kind;
+            this.index = index;
+            this.task = task;
+        }
+
+        private String describe() {
+            switch (kind) {
+            case SORT:
+                return "sort";
+            case DELETE_ALL:
+                return "delete " + indices.length + " tasks";
+            case MARK_ALL:
+                return "mark " + indices.length + " tasks";
+            case UNMARK_ALL:
+                return "unmark " + indices.length + " tasks";
+            default:
+                return kind.name().toLowerCase() + " " + task;
+            }
+        }
+    }
+
+    private final int maxChanges;
+    private final Deque<Change> undoable = new ArrayDeque<>();
+    private final Deque<Change> redoable = new ArrayDeque<>();
+
+    /**
+     * Creates an empty history.
+     *
+     * @param maxChanges The number of changes to remember at most. Older ones can no longer be undone.
+     */
+    public TaskHistory(int maxChanges) {
+        assert maxChanges > 0 : "history should remember at least one change";
+        this.maxChanges = maxChanges;
+    }
+
+    /**
+     * Records that a task was added to the end of the list.
+     *
+     * @param tasks The task list after the change.
+     * @param task The added task.
+     */
+    public void recordAdd(TaskList tasks, Task task) {
+        record(new Change(Kind.ADD, tasks.getSize() - 1, task));
+    }
+
+    /**
+     * Records that the task at the given index was deleted.
+     *
+     * @param index The 0-based index the task had.
+     * @param task The deleted task.
+     */
+    public void recordDelete(int index, Task task) {
+        record(new Change(Kind.DELETE, index, task));
+    }
+
+    /**
+     * Records that the task at the given index was marked as done, or as not done.
+     *
+     * @param index The 0-based index of the task.
+     * @param task The task after the change.
+     * @param wasDone Whether the task was done before the change.
+     */
+    public void recordDone(int index, Task task, boolean wasDone) {
+        Change change = new Change(task.isDone() ? Kind.MARK : Kind.UNMARK, index, task);
+        change.wasDone = wasDone;
+        record(change);
+    }
+
+    /**
+     * Records that the tasks at the given indices were deleted by one command.
+     *
+     * @param indices The distinct 0-based indices the tasks had, in increasing order.
+     * @param deleted The deleted tasks, in the same order.
+     */
+    public void recordDeleteAll(int[] indices, List<Task> deleted) {
+        Change change = new Change(Kind.DELETE_ALL, 0, null);
+        change.indices = indices;
+        change.tasks = deleted;
+        record(change);
+    }
+
+    /**
+     * Records that the tasks at the given indices were marked as done, or as not done, by one command.
+     *
+     * @param indices The distinct 0-based indices of the tasks, in increasing order.
+     * @param isDone Whether the tasks were marked as done.
+     * @param wereDone Whether each task was done before the change.
+     */
+    public void recordDoneAll(int[] indices, boolean isDone, boolean[] wereDone) {
+        Change change = new Change(isDone ? Kind.MARK_ALL : Kind.UNMARK_ALL, 0, null);
+        change.indices = indices;
+        change.wereDone = wereDone;
+        record(change);
+    }
+
+    /**
+     * Records that the list was sorted.
+     *
+     * @param previousOrder The IDs of the tasks in the order they had before the sort.
+     */
+    public void recordSort(long[] previousOrder) {
+        Change change = new Change(Kind.SORT, 0, null);
+        change.previousOrder = previousOrder;
+        record(change);
+    }
+
+    /**
+     * Reverses the most recent change that has not been undone, and saves the result.
+     *
+     * @param tasks The task list the change was made to.
+     * @param storage The storage the list is saved to.
+     * @return A description of the change that was undone.
+     * @throws SparkException If there is nothing to undo or saving fails.
+     */
+    public String undo(TaskList tasks, Storage storage) throws SparkException {
+        Change change = undoable.poll();
+        if (change == null) {
+            throw new SparkException("There is nothing to undo.");
+        }
+
+        switch (change.kind) {
+        case ADD:
+            change.task = tasks.deleteTask(change.index);
+            storage.saveDelete(tasks, change.index);
+            break;
+        case DELETE:
+            tasks.insertTask(change.index, change.task);
+            storage.saveInsert(tasks, change.index);
+            break;
+        case MARK:
+        case UNMARK:
+            setDone(tasks, storage, change.index, change.wasDone);
+            break;
+        case SORT:
+            tasks.reorder(change.previousOrder);
+            storage.save(tasks);
+            break;
+        case DELETE_ALL:
+            tasks.insertAll(change.indices, change.tasks);
+            storage.saveInsertAll(tasks, change.indices);
+            break;
+        case MARK_ALL:
+        case UNMARK_ALL:
+            setDoneAll(tasks, storage, select(change.indices, change.wereDone, true), true);
+            setDoneAll(tasks, storage, select(change.indices, change.wereDone, false), false);
+            break;
+        default:
+            throw new AssertionError(change.kind);
+        }
+        redoable.push(change);
+        return change.describe();
+    }
+
+    /**
+     * Makes the most recently undone change again, and saves the result.
+     *
+     * @param tasks The task list the change was made to.
+     * @param storage The storage the list is saved to.
+     * @return A description of the change that was redone.
+     * @throws SparkException If there is nothing to redo or saving fails.
+     */
+    public String redo(TaskList tasks, Storage storage) throws SparkException {
+        Change change = redoable.poll();
+        if (change == null) {
+            throw new SparkException("There is nothing to redo.");
+        }
+
+        switch (change.kind) {
+        case ADD:
+            tasks.addTask(change.task);
+            storage.saveAdd(tasks, change.task);
+            break;
+        case DELETE:
+            change.task = tasks.deleteTask(change.index);
+            storage.saveDelete(tasks, change.index);
+            break;
+        case MARK:
+        case UNMARK:
+            change.task = setDone(tasks, storage, change.index, change.kind == Kind.MARK);
+            break;
+        case SORT:
+            tasks.sortByDateTime();
+            storage.saveSort(tasks);
+            break;
+        case DELETE_ALL:
+            change.tasks = tasks.deleteAll(change.indices);
+            storage.saveDeleteAll(tasks, change.indices);
+            break;
+        case MARK_ALL:
+        case UNMARK_ALL:
+            setDoneAll(tasks, storage, change.indices, change.kind == Kind.MARK_ALL);
+            break;
+        default:
+            throw new AssertionError(change.kind);
+        }
+        undoable.push(change);
+        return change.describe();
+    }
+
+    private void record(Change change) {
+        redoable.clear();
+        undoable.push(change);
+        if (undoable.size() > maxChanges) {
+            undoable.removeLast();
+        }
+    }
+
+    private static void setDoneAll(TaskList tasks, Storage storage, int[] indices, boolean isDone)
+            throws SparkException {
+        if (indices.length == 0) {
+            return;
+        }
+        if (isDone) {
+            tasks.markAll(indices);
+            storage.saveMarkAll(tasks, indices);
+        } else {
+            tasks.unmarkAll(indices);
+            storage.saveUnmarkAll(tasks, indices);
+        }
+    }
+
+    /**
+     * Returns the indices whose flag has the given value.
+     */
+    private static int[] select(int[] indices, boolean[] flags, boolean value) {
+        return IntStream.range(0, indices.length).filter(i -> flags[i] == value).map(i -> indices[i]).toArray();
+    }
+
+    private static Task setDone(TaskList tasks, Storage storage, int index, boolean isDone) throws SparkException {
+        if (isDone) {
+            Task task = tasks.mark(index);
+            storage.saveMark(tasks, index);
+            return task;
+        }
+        Task task = tasks.unmark(index);
+        storage.saveUnmark(tasks, index);
+        return task;
+    }
+}
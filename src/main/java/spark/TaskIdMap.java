@@ -0,0 +1,166 @@
+package spark;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from task IDs to tasks, keyed by primitive {@code long}s so that lookups do not box.
+ * <p>
+ * Alongside each task it keeps an order key: a number that grows with the task's position in the
+ * list, used by {@link TaskList} to find the position of a task without scanning the list.
+ * <p>
+ * Entries live in parallel arrays with open addressing and linear probing. Removal shifts later
+ * entries of the same probe run back, so no tombstones are left behind.
+ */
+public class TaskIdMap {
+    private static final long EMPTY = 0;
+    private static final int INITIAL_CAPACITY = 16;
+
+    // IDs start at 1, so 0 marks a free slot.
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private Task[] tasks = new Task[INITIAL_CAPACITY];
+    private long[] orders = new long[INITIAL_CAPACITY];
+    private int size = 0;
+
+    /**
+     * Returns the number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the task with the given ID.
+     *
+     * @param id The task ID.
+     * @return The task, or {@code null} if there is none.
+     */
+    public Task get(long id) {
+        int slot = find(id);
+        return slot < 0 ? null : tasks[slot];
+    }
+
+    /**
+     * Returns the order key of the task with the given ID.
+     *
+     * @param id The task ID, which must be present.
+     * @return The order key.
+     */
+    public long getOrder(long id) {
+        return orders[find(id)];
+    }
+
+    /**
+     * Returns whether there is a task with the given ID.
+     */
+    public boolean contains(long id) {
+        return find(id) >= 0;
+    }
+
+    /**
+     * Adds or replaces the task with the given ID.
+     *
+     * @param id The task ID, greater than 0.
+     * @param task The task.
+     * @param order The order key of the task.
+     */
+    public void put(long id, Task task, long order) {
+        assert id != EMPTY : "task IDs start at 1";
+        if ((size + 1) * 4 > ids.length * 3) {
+            resize(ids.length * 2);
+        }
+
+        int slot = slotOf(id, ids.length);
+        while (ids[slot] != EMPTY && ids[slot] != id) {
+            slot = (slot + 1) & (ids.length - 1);
+        }
+        if (ids[slot] == EMPTY) {
+            size++;
+        }
+        ids[slot] = id;
+        tasks[slot] = task;
+        orders[slot] = order;
+    }
+
+    /**
+     * Changes the order key of the task with the given ID.
+     *
+     * @param id The task ID, which must be present.
+     * @param order The new order key.
+     */
+    public void setOrder(long id, long order) {
+        orders[find(id)] = order;
+    }
+
+    /**
+     * Removes the task with the given ID, if there is one.
+     *
+     * @param id The task ID.
+     */
+    public void remove(long id) {
+        int slot = find(id);
+        if (slot < 0) {
+            return;
+        }
+        size--;
+
+        int mask = ids.length - 1;
+        int free = slot;
+        int next = (free + 1) & mask;
+        while (ids[next] != EMPTY) {
+            int home = slotOf(ids[next], ids.length);
+            // Move the entry back unless its home slot lies cyclically after the free slot.
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                ids[free] = ids[next];
+                tasks[free] = tasks[next];
+                orders[free] = orders[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        ids[free] = EMPTY;
+        tasks[free] = null;
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        Arrays.fill(ids, EMPTY);
+        Arrays.fill(tasks, null);
+        size = 0;
+    }
+
+    private int find(long id) {
+        if (id == EMPTY) {
+            return -1;
+        }
+        int slot = slotOf(id, ids.length);
+        while (ids[slot] != EMPTY) {
+            if (ids[slot] == id) {
+                return slot;
+            }
+            slot = (slot + 1) & (ids.length - 1);
+        }
+        return -1;
+    }
+
+    private void resize(int capacity) {
+        long[] oldIds = ids;
+        Task[] oldTasks = tasks;
+        long[] oldOrders = orders;
+        ids = new long[capacity];
+        tasks = new Task[capacity];
+        orders = new long[capacity];
+        size = 0;
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldIds[i] != EMPTY) {
+                put(oldIds[i], oldTasks[i], oldOrders[i]);
+            }
+        }
+    }
+
+    private static int slotOf(long id, int capacity) {
+        long hash = id * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & (capacity - 1);
+    }
+}
@@ -1,21 +1,47 @@
 package spark;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.time.LocalDateTime;
-import java.util.Comparator;
 
 /**
  * Represents a list of {@link Task} objects.
+ * <p>
+ * The tasks are kept in a {@link TaskTree}, so a task is found, deleted or added by its position in
+ * O(log n) time. Tasks added one after another (e.g. while loading) are first collected in a plain
+ * list and joined onto the tree in one piece when it is next changed.
+ * <p>
+ * Each task is also given a stable ID when it is added, which stays the same while other tasks are
+ * deleted or the list is sorted. Tasks are found by ID in a {@link TaskIdMap}.
+ * <p>
+ * Subclasses that keep the tasks elsewhere (e.g. {@link PagedTaskList}) override {@link #addTask},
+ * {@link #getSize}, {@link #getTask}, {@link #deleteTask}, {@link #find}, {@link #getSortedByDateTime},
+ * {@link #findDueBefore}, {@link #sortByDateTime}, {@link #reorder}, {@link #insertTask},
+ * {@link #insertAll}, {@link #deleteAll}, {@link #getTaskById} and {@link #indexOfId}; the other operations are built on those. Subclasses whose {@link #getTask} returns a copy of the
+ * task (e.g. {@link ColumnarTaskList}) also override {@link #mark} and {@link #unmark}.
  */
 public class TaskList {
-    private ArrayList<Task> tasks = new ArrayList<>();
+    // The tasks in list order: those in the tree, followed by those appended since the tree was last changed.
+    private TaskTree tasks = TaskTree.empty();
+    private final ArrayList<Task> appended = new ArrayList<>();
+
+    // Built by the first find, then kept up to date by add and delete.
+    private TaskSearchIndex searchIndex;
+
+    // Built by the first sort or date query, then kept up to date by add and delete.
+    private TaskDateIndex dateIndex;
+
+    // Every task by its ID, with an order key that grows with the task's position in the list.
+    private final TaskIdMap tasksById = new TaskIdMap();
+    private long nextId = 1;
+    private long nextOrder = 0;
 
     /**
      * Constructs an empty {@code TaskList}.
      */
     public TaskList() {
-        this.tasks = new ArrayList<>();
+        this.tasks = TaskTree.empty();
     }
 
     /**
@@ -23,15 +49,19 @@ public class TaskList {
      * @param initialTasks The initial tasks to include in the task list.
      */
     public TaskList(List<Task> initialTasks) {
-        this.tasks = new ArrayList<>(initialTasks);
+        for (Task task : initialTasks) {
+            assignId(task);
+            tasksById.put(task.getId(), task, nextOrder++);
+        }
+        this.tasks = TaskTree.of(initialTasks);
     }
 
-    private void checkIndex(int index) throws SparkException {
+    protected void checkIndex(int index) throws SparkException {
         assert tasks != null : "tasks list should be initialized";
-        assert tasks.size() >= 0 : "tasks size should not be negative";
+        assert getSize() >= 0 : "tasks size should not be negative";
 
-        if (index < 0 || index >= tasks.size()) {
-            throw new SparkException("Task number must be between 1 and " + tasks.size() + ".");
+        if (index < 0 || index >= getSize()) {
+            throw new SparkException("Task number must be between 1 and " + getSize() + ".");
         }
     }
 
@@ -40,7 +70,15 @@ public class TaskList {
      * @param task The task to be added
      */
     public void addTask(Task task) {
-        tasks.add(task);
+        assignId(task);
+        tasksById.put(task.getId(), task, nextOrder++);
+        appended.add(task);
+        if (searchIndex != null) {
+            searchIndex.add(task);
+        }
+        if (dateIndex != null) {
+            dateIndex.add(task);
+        }
     }
 
 
@@ -50,7 +88,7 @@ public class TaskList {
      * @return The size of the task list.
      */
     public int getSize() {
-        return tasks.size();
+        return tasks.size() + appended.size();
     }
 
 
@@ -61,6 +99,9 @@ public class TaskList {
      * @return The task at the specified index.
      */
     public Task getTask(int index) {
+        if (index >= tasks.size()) {
+            return appended.get(index - tasks.size());
+        }
         return tasks.get(index);
     }
 
@@ -72,8 +113,9 @@ public class TaskList {
      */
     public Task mark(int index) throws SparkException {
         checkIndex(index);
-        tasks.get(index).markAsDone();
-        return tasks.get(index);
+        Task task = getTask(index);
+        task.markAsDone();
+        return task;
     }
 
 
@@ -85,8 +127,121 @@ public class TaskList {
      */
     public Task unmark(int index) throws SparkException {
         checkIndex(index);
-        tasks.get(index).markAsNotDone();
-        return tasks.get(index);
+        Task task = getTask(index);
+        task.markAsNotDone();
+        return task;
+    }
+
+    /**
+     * Marks the tasks at the given indices as done.
+     * @param indices The distinct 0-based indices, in increasing order.
+     * @return The tasks that were marked, in the same order.
+     * @throws SparkException If an index is out of range, in which case no task is changed.
+     */
+    public List<Task> markAll(int[] indices) throws SparkException {
+        checkIndices(indices);
+        List<Task> marked = new ArrayList<>(indices.length);
+        for (int index : indices) {
+            marked.add(mark(index));
+        }
+        return marked;
+    }
+
+    /**
+     * Marks the tasks at the given indices as not done.
+     * @param indices The distinct 0-based indices, in increasing order.
+     * @return The tasks that were marked as not done, in the same order.
+     * @throws SparkException If an index is out of range, in which case no task is changed.
+     */
+    public List<Task> unmarkAll(int[] indices) throws SparkException {
+        checkIndices(indices);
+        List<Task> unmarked = new ArrayList<>(indices.length);
+        for (int index : indices) {
+            unmarked.add(unmark(index));
+        }
+        return unmarked;
+    }
+
+    /**
+     * Deletes the tasks at the given indices.
+     * <p>
+     * When many tasks are deleted, the remaining tasks are copied into a new tree in one pass, rather
+     * than removing the tasks one at a time. A few tasks are removed one at a time, as copying the
+     * whole list would then cost more.
+     * @param indices The distinct 0-based indices, in increasing order.
+     * @return The deleted tasks, in list order.
+     * @throws SparkException If an index is out of range, in which case no task is deleted.
+     */
+    public List<Task> deleteAll(int[] indices) throws SparkException {
+        checkIndices(indices);
+        joinAppended();
+        List<Task> removed = new ArrayList<>(indices.length);
+        // Each removal from the tree takes about log2(n) steps, and copying it takes n.
+        int depth = 32 - Integer.numberOfLeadingZeros(getSize());
+        if ((long) indices.length * depth < getSize()) {
+            for (int i = indices.length - 1; i >= 0; i--) {
+                removed.add(tasks.get(indices[i]));
+                tasks = tasks.remove(indices[i]);
+            }
+            Collections.reverse(removed);
+        } else {
+            List<Task> kept = new ArrayList<>(getSize() - indices.length);
+            int next = 0;
+            int position = 0;
+            for (Task task : tasks) {
+                if (next < indices.length && indices[next] == position) {
+                    removed.add(task);
+                    next++;
+                } else {
+                    kept.add(task);
+                }
+                position++;
+            }
+            tasks = TaskTree.of(kept);
+        }
+
+        for (Task task : removed) {
+            tasksById.remove(task.getId());
+            if (searchIndex != null) {
+                searchIndex.remove(task);
+            }
+            if (dateIndex != null) {
+                dateIndex.remove(task);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Checks every index of a bulk change before any task is changed.
+     * @param indices The 0-based indices, which must be distinct and in increasing order.
+     * @throws SparkException If an index is out of range.
+     */
+    protected void checkIndices(int[] indices) throws SparkException {
+        for (int i = 0; i < indices.length; i++) {
+            assert i == 0 || indices[i - 1] < indices[i] : "indices should be distinct and increasing";
+            checkIndex(indices[i]);
+        }
+    }
+
+    /**
+     * Replaces the task at the given index with a copy of it, e.g. one with a different done status,
+     * keeping its ID and its place in the indexes.
+     *
+     * @param index The 0-based index of the task.
+     * @param replacement The copy, with the same ID, description and date/time as the task it replaces.
+     */
+    protected void replaceTask(int index, Task replacement) {
+        joinAppended();
+        assert tasks.get(index).getId() == replacement.getId() : "a task should be replaced by a copy of itself";
+        tasks = tasks.set(index, replacement);
+        tasksById.put(replacement.getId(), replacement, tasksById.getOrder(replacement.getId()));
+        if (searchIndex != null) {
+            searchIndex.replace(replacement);
+        }
+        if (dateIndex != null) {
+            dateIndex.replace(replacement);
+        }
     }
 
     /**
@@ -97,22 +252,68 @@ public class TaskList {
      */
     public Task deleteTask(int index) throws SparkException {
         checkIndex(index);
-        Task removed = tasks.remove(index);
+        joinAppended();
+        Task removed = tasks.get(index);
+        tasks = tasks.remove(index);
+        tasksById.remove(removed.getId());
+        if (searchIndex != null) {
+            searchIndex.remove(removed);
+        }
+        if (dateIndex != null) {
+            dateIndex.remove(removed);
+        }
         return removed;
     }
 
+    /**
+     * Returns all tasks in list order.
+     *
+     * @return A new list of the tasks.
+     */
+    public List<Task> getAll() {
+        List<Task> all = new ArrayList<>(getSize());
+        for (int i = 0; i < getSize(); i++) {
+            all.add(getTask(i));
+        }
+        return all;
+    }
+
     /**
      * Finds all matches with the given keyword.
+     * <p>
+     * Keywords of at least {@value TaskSearchIndex#MIN_KEY_LENGTH} characters without whitespace are
+     * looked up in a {@link TaskSearchIndex}, which is built on the first such search and then updated
+     * as tasks are added and deleted. Shorter keywords match too many tasks to be worth indexing,
+     * and are checked against every task.
      * @param keyword The keyword to match with
-     * @return A list of tasks that match with the keyword
+     * @return A list of tasks that match with the keyword, in list order
      */
     public List<Task> find(String keyword) {
-        List<Task> matches = new ArrayList<>();
         String key = keyword.toLowerCase();
+        if (!TaskSearchIndex.canFind(key)) {
+            return findByScan(key);
+        }
+
+        if (searchIndex == null) {
+            searchIndex = new TaskSearchIndex();
+            joinAppended();
+            for (Task task : tasks) {
+                searchIndex.add(task);
+            }
+        }
+        return searchIndex.find(key);
+    }
 
-        for (Task t : tasks) {
-            String description = t.getDescription();
-            if (description.toLowerCase().contains(key)) {
+    /**
+     * Finds all matches with the given lower-cased keyword by checking every task.
+     * @param key The lower-cased keyword to match with
+     * @return A list of tasks that match with the keyword, in list order
+     */
+    protected List<Task> findByScan(String key) {
+        List<Task> matches = new ArrayList<>();
+        for (int i = 0; i < getSize(); i++) {
+            Task t = getTask(i);
+            if (DescriptionPool.toLowerCase(t.getDescription()).contains(key)) {
                 matches.add(t);
             }
         }
@@ -120,16 +321,256 @@ public class TaskList {
         return matches;
     }
 
+    /**
+     * Returns the tasks ordered by date/time, without changing the list.
+     * <p>
+     * Tasks without a date/time are placed at the end. Tasks with the same date/time keep their order
+     * in the list. The dated tasks come straight from a {@link TaskDateIndex}, which is built on first
+     * use and then updated as tasks are added and deleted.
+     *
+     * @return The sorted tasks.
+     */
+    public List<Task> getSortedByDateTime() {
+        List<Task> sorted = getDateIndex().getAll();
+        joinAppended();
+        for (Task task : tasks) {
+            if (task.getDateTime() == null) {
+                sorted.add(task);
+            }
+        }
+        return sorted;
+    }
+
+    /**
+     * Finds the tasks due strictly before the given date/time.
+     *
+     * @param dateTime The date/time the tasks must be due before.
+     * @return The matching tasks, earliest first.
+     */
+    public List<Task> findDueBefore(LocalDateTime dateTime) {
+        return getDateIndex().getBefore(dateTime);
+    }
+
     /**
      * Sorts the tasks in the list by date/time.
      * <p>
-     * Tasks without a date/time are placed at the end of the list.
+     * Tasks without a date/time are placed at the end of the list. The sorted order is read from the
+     * date index, so the tasks are not compared again.
+     *
+     * @return {@code true} if the order of the list changed.
+     */
+    public boolean sortByDateTime() {
+        List<Task> sorted = getSortedByDateTime();
+        if (sorted.equals(tasks.toList())) {
+            return false;
+        }
+
+        tasks = TaskTree.of(sorted);
+        renumber();
+        // The index returns matches in the order they were added, which no longer matches the list.
+        searchIndex = null;
+        return true;
+    }
+
+    /**
+     * Puts the tasks back in an earlier order, e.g. to undo a sort.
+     * <p>
+     * The indexes are dropped, to be built again on next use, as the order they keep may no longer
+     * match the list.
+     *
+     * @param ids The IDs of all tasks in the list, in the new order.
+     */
+    public void reorder(long[] ids) {
+        assert ids.length == getSize() : "every task should be given a place";
+        List<Task> ordered = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            ordered.add(tasksById.get(id));
+        }
+        tasks = TaskTree.of(ordered);
+        appended.clear();
+        renumber();
+        searchIndex = null;
+        dateIndex = null;
+    }
+
+    /**
+     * Inserts a task at the given position, e.g. to undo its deletion. The task keeps its ID if no
+     * other task has it.
+     * <p>
+     * Unlike {@link #addTask}, this takes O(n) time, as the order keys of the later tasks change and
+     * the indexes are dropped, to be built again on next use.
+     *
+     * @param index The 0-based position, from 0 up to and including the size.
+     * @param task The task to insert.
+     * @throws SparkException If the index is out of range.
+     */
+    public void insertTask(int index, Task task) throws SparkException {
+        if (index < 0 || index > getSize()) {
+            throw new SparkException("Task number must be between 1 and " + (getSize() + 1) + ".");
+        }
+        if (index == getSize()) {
+            addTask(task);
+            return;
+        }
+
+        assignId(task);
+        joinAppended();
+        tasks = tasks.insert(index, task);
+        tasksById.put(task.getId(), task, 0);
+        renumber();
+        searchIndex = null;
+        dateIndex = null;
+    }
+
+    /**
+     * Inserts tasks at the given positions, e.g. to undo a {@link #deleteAll}. Each task keeps its ID
+     * if no other task has it.
+     * <p>
+     * The tasks are merged into the list in one pass, so this takes O(n) time however many tasks are
+     * inserted, rather than O(n) for each one as with {@link #insertTask}. The indexes are dropped, to
+     * be built again on next use.
+     *
+     * @param indices The distinct 0-based positions the tasks have after the change, in increasing order.
+     * @param inserted The tasks to insert, in the same order.
+     * @throws SparkException If a position is out of range, in which case no task is inserted.
+     */
+    public void insertAll(int[] indices, List<Task> inserted) throws SparkException {
+        checkInsertIndices(indices, inserted.size());
+        joinAppended();
+        List<Task> merged = new ArrayList<>(getSize() + inserted.size());
+        int next = 0;
+        for (Task task : tasks) {
+            while (next < indices.length && indices[next] == merged.size()) {
+                merged.add(inserted.get(next++));
+            }
+            merged.add(task);
+        }
+        while (next < indices.length) {
+            merged.add(inserted.get(next++));
+        }
+
+        for (Task task : inserted) {
+            assignId(task);
+            tasksById.put(task.getId(), task, 0);
+        }
+        tasks = TaskTree.of(merged);
+        renumber();
+        searchIndex = null;
+        dateIndex = null;
+    }
+
+    /**
+     * Checks every position of a bulk insert before any task is inserted.
+     * @param indices The 0-based positions after the insert, which must be distinct and in increasing order.
+     * @param count The number of tasks to insert.
+     * @throws SparkException If a position is out of range.
+     */
+    protected void checkInsertIndices(int[] indices, int count) throws SparkException {
+        assert indices.length == count : "every inserted task should be given a position";
+        int newSize = getSize() + count;
+        for (int i = 0; i < indices.length; i++) {
+            assert i == 0 || indices[i - 1] < indices[i] : "indices should be distinct and increasing";
+            if (indices[i] < 0 || indices[i] >= newSize) {
+                throw new SparkException("Task number must be between 1 and " + newSize + ".");
+            }
+        }
+    }
+
+    /**
+     * Returns the task with the given ID.
+     *
+     * @param id The task ID.
+     * @return The task, or {@code null} if there is none.
      */
-    public void sortByDateTime() {
-        tasks.sort(Comparator.comparing(
-                Task::getDateTime,
-                Comparator.nullsLast(Comparator.naturalOrder())
-        ));
+    public Task getTaskById(long id) {
+        return tasksById.get(id);
+    }
+
+    /**
+     * Returns the current position of the task with the given ID.
+     *
+     * @param id The task ID.
+     * @return The 0-based index of the task.
+     * @throws SparkException If there is no task with that ID.
+     */
+    public int indexOfId(long id) throws SparkException {
+        if (!tasksById.contains(id)) {
+            throw new SparkException("There is no task with ID #" + id + ".");
+        }
+        joinAppended();
+        return tasks.indexOf(task -> tasksById.getOrder(task.getId()), tasksById.getOrder(id));
+    }
+
+    /**
+     * Returns the ID the next new task will get.
+     *
+     * @return The next ID.
+     */
+    public long getNextId() {
+        return nextId;
+    }
+
+    /**
+     * Makes sure that new tasks get IDs of at least the given one, e.g. so that the IDs of tasks
+     * deleted before the list was saved are not given out again.
+     *
+     * @param id The lowest ID new tasks may get.
+     */
+    void reserveIds(long id) {
+        nextId = Math.max(nextId, id);
+    }
+
+    /**
+     * Gives a task without an ID, or with one already in use, the next free ID.
+     *
+     * @param task The task being added.
+     */
+    protected void assignId(Task task) {
+        if (task.getId() <= 0 || tasksById.contains(task.getId())) {
+            task.setId(nextId++);
+        } else {
+            reserveIds(task.getId() + 1);
+        }
+    }
+
+    /**
+     * Returns the tasks as an immutable tree, first joining any appended tasks into it.
+     */
+    TaskTree toTree() {
+        joinAppended();
+        return tasks;
+    }
+
+    /**
+     * Gives every task an order key matching its position in the tree.
+     */
+    private void renumber() {
+        long order = 0;
+        for (Task task : tasks) {
+            tasksById.setOrder(task.getId(), order++);
+        }
+        nextOrder = order;
+    }
+
+    private TaskDateIndex getDateIndex() {
+        if (dateIndex == null) {
+            dateIndex = new TaskDateIndex();
+            joinAppended();
+            for (Task task : tasks) {
+                dateIndex.add(task);
+            }
+        }
+        return dateIndex;
+    }
+
+    /**
+     * Moves the tasks appended since the tree was last changed into the tree.
+     */
+    private void joinAppended() {
+        if (!appended.isEmpty()) {
+            tasks = tasks.concat(TaskTree.of(appended));
+            appended.clear();
+        }
     }
 
 
@@ -0,0 +1,210 @@
+package spark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An inverted index from the lower-cased words of task descriptions to the tasks containing them.
+ * <p>
+ * A word is a maximal run of non-whitespace characters. A keyword without whitespace can only occur
+ * inside a single word, so a task contains the keyword exactly when one of its words does. {@link #find}
+ * therefore only checks words and returns their tasks, and gives the same results as checking every
+ * description.
+ * <p>
+ * To avoid checking every distinct word, each word is also indexed by its trigrams (its substrings of
+ * three characters). Only the words that contain all trigrams of the keyword are checked. The trigram
+ * index grows with the number of distinct words rather than the number of tasks, and a word is dropped
+ * from it once no task uses the word any more.
+ * <p>
+ * Each task is numbered in the order it was added, which is also its order in the list as long as the
+ * list is only appended to and deleted from. Matches are returned in that order.
+ * <p>
+ * Tasks are kept by their ID, so a task can be replaced by a changed copy of itself without losing
+ * its place (see {@link #replace}).
+ */
+public class TaskSearchIndex {
+    /** The length of the shortest keyword the index can look up. */
+    public static final int MIN_KEY_LENGTH = 3;
+
+    // Each word to the tasks using it, by ID, in the order they were added.
+    private final Map<String, Map<Long, Task>> postings = new HashMap<>();
+    private final Map<Long, Long> sequence = new HashMap<>();
+    private long nextSequence = 0;
+
+    // Each trigram, packed into a long, to the distinct words containing it.
+    private final Map<Long, Set<String>> trigrams = new HashMap<>();
+
+    /**
+     * Returns whether {@link #find} can answer the given lower-cased keyword.
+     *
+     * @param key The lower-cased keyword.
+     * @return {@code false} if the keyword is shorter than {@value #MIN_KEY_LENGTH} characters,
+     *     or contains whitespace, so that it may span words.
+     */
+    public static boolean canFind(String key) {
+        if (key.length() < MIN_KEY_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (Character.isWhitespace(key.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds a task after all tasks added so far.
+     *
+     * @param task The task to add.
+     */
+    public void add(Task task) {
+        sequence.put(task.getId(), nextSequence++);
+        for (String word : words(task)) {
+            postings.computeIfAbsent(word, this::addWord).put(task.getId(), task);
+        }
+    }
+
+    /**
+     * Removes a task that was added before.
+     *
+     * @param task The task to remove.
+     */
+    public void remove(Task task) {
+        if (sequence.remove(task.getId()) == null) {
+            return;
+        }
+        for (String word : words(task)) {
+            Map<Long, Task> tasks = postings.get(word);
+            if (tasks != null) {
+                tasks.remove(task.getId());
+                if (tasks.isEmpty()) {
+                    postings.remove(word);
+                    removeWord(word);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces a task that was added before with a copy of it, e.g. one that has since been marked
+     * as done, keeping its place in the order.
+     *
+     * @param replacement The copy, with the same ID and description as the task it replaces.
+     */
+    public void replace(Task replacement) {
+        if (!sequence.containsKey(replacement.getId())) {
+            return;
+        }
+        for (String word : words(replacement)) {
+            postings.get(word).replace(replacement.getId(), replacement);
+        }
+    }
+
+    /**
+     * Returns the tasks whose description contains the keyword, in the order they were added.
+     *
+     * @param key The lower-cased keyword, for which {@link #canFind} must return {@code true}.
+     * @return The matching tasks.
+     */
+    public List<Task> find(String key) {
+        List<Map<Long, Task>> matchingWords = new ArrayList<>();
+        for (String word : candidateWords(key)) {
+            if (word.contains(key)) {
+                matchingWords.add(postings.get(word));
+            }
+        }
+
+        if (matchingWords.size() == 1) {
+            return new ArrayList<>(matchingWords.get(0).values());
+        }
+        Map<Long, Task> union = new HashMap<>();
+        for (Map<Long, Task> tasks : matchingWords) {
+            union.putAll(tasks);
+        }
+        List<Task> matches = new ArrayList<>(union.values());
+        matches.sort((a, b) -> Long.compare(sequence.get(a.getId()), sequence.get(b.getId())));
+        return matches;
+    }
+
+    /**
+     * Returns the words that contain every trigram of the keyword, checking the smallest sets first.
+     */
+    private Set<String> candidateWords(String key) {
+        List<Set<String>> sets = new ArrayList<>();
+        for (int i = 0; i + MIN_KEY_LENGTH <= key.length(); i++) {
+            Set<String> words = trigrams.get(trigram(key, i));
+            if (words == null) {
+                return Set.of();
+            }
+            sets.add(words);
+        }
+        sets.sort((a, b) -> Integer.compare(a.size(), b.size()));
+
+        Set<String> candidates = new HashSet<>(sets.get(0));
+        for (int i = 1; i < sets.size() && !candidates.isEmpty(); i++) {
+            candidates.retainAll(sets.get(i));
+        }
+        return candidates;
+    }
+
+    /**
+     * Indexes a word that no task used so far by its trigrams.
+     *
+     * @return The new, empty map of tasks using the word.
+     */
+    private Map<Long, Task> addWord(String word) {
+        for (int i = 0; i + MIN_KEY_LENGTH <= word.length(); i++) {
+            trigrams.computeIfAbsent(trigram(word, i), t -> new HashSet<>()).add(word);
+        }
+        return new LinkedHashMap<>();
+    }
+
+    /**
+     * Removes a word that no task uses any more from the trigram index.
+     */
+    private void removeWord(String word) {
+        for (int i = 0; i + MIN_KEY_LENGTH <= word.length(); i++) {
+            Long key = trigram(word, i);
+            Set<String> words = trigrams.get(key);
+            if (words != null) {
+                words.remove(word);
+                if (words.isEmpty()) {
+                    trigrams.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Packs the three characters starting at the given index into one number.
+     */
+    private static long trigram(String text, int start) {
+        return ((long) text.charAt(start) << 32) | ((long) text.charAt(start + 1) << 16) | text.charAt(start + 2);
+    }
+
+    /**
+     * Splits the lower-cased description of a task into its distinct words.
+     */
+    private static Set<String> words(Task task) {
+        String description = DescriptionPool.toLowerCase(task.getDescription());
+        Set<String> words = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i <= description.length(); i++) {
+            boolean isBreak = i == description.length() || Character.isWhitespace(description.charAt(i));
+            if (isBreak && start >= 0) {
+                words.add(description.substring(start, i));
+                start = -1;
+            } else if (!isBreak && start < 0) {
+                start = i;
+            }
+        }
+        return words;
+    }
+}
@@ -0,0 +1,291 @@
+package spark;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.ToLongFunction;
+
+/**
+ * An immutable sequence of tasks stored as a treap ordered by position.
+ * <p>
+ * Each node knows the size of its subtree, so the task at a position is found by walking down from
+ * the root, and tasks are inserted and removed by splitting and re-joining subtrees. Random node
+ * priorities keep the tree balanced in expectation, so every operation takes O(log n) time.
+ * <p>
+ * Changes return a new tree that shares all untouched nodes with the old one, which stays valid.
+ */
+public final class TaskTree implements Iterable<Task> {
+    private static final TaskTree EMPTY = new TaskTree(null);
+
+    private final Node root;
+
+    private static final class Node {
+        private final Task task;
+        private final long priority;
+        private final Node left;
+        private final Node right;
+        private final int size;
+
+        private Node(Task task, long priority, Node left, Node right) {
+            this.task = task;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            this.size = size(left) + 1 + size(right);
+        }
+
+        private Node withChildren(Node left, Node right) {
+            return new Node(task, priority, left, right);
+        }
+    }
+
+    private TaskTree(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Returns the empty tree.
+     */
+    public static TaskTree empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Builds a balanced tree of the given tasks, in order, in O(n) time.
+     *
+     * @param tasks The tasks.
+     * @return The tree.
+     */
+    public static TaskTree of(List<Task> tasks) {
+        return tasks.isEmpty() ? EMPTY : new TaskTree(build(tasks, 0, tasks.size()));
+    }
+
+    /**
+     * Returns the number of tasks.
+     */
+    public int size() {
+        return size(root);
+    }
+
+    /**
+     * Returns the task at the given position.
+     *
+     * @param index The 0-based position.
+     * @return The task.
+     * @throws IndexOutOfBoundsException If the index is out of range.
+     */
+    public Task get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size());
+        }
+
+        Node node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index == leftSize) {
+                return node.task;
+            } else {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * Finds the position of a task in a tree whose tasks are in increasing order of the given key.
+     *
+     * @param orderKey Returns the key of a task.
+     * @param key The key of the task to find.
+     * @return The 0-based position of the task, or -1 if no task has the key.
+     */
+    public int indexOf(ToLongFunction<Task> orderKey, long key) {
+        int index = 0;
+        Node node = root;
+        while (node != null) {
+            long nodeKey = orderKey.applyAsLong(node.task);
+            if (key < nodeKey) {
+                node = node.left;
+            } else if (key > nodeKey) {
+                index += size(node.left) + 1;
+                node = node.right;
+            } else {
+                return index + size(node.left);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns a tree with the task inserted at the given position.
+     *
+     * @param index The 0-based position, from 0 up to and including the size.
+     * @param task The task to insert.
+     * @return The new tree.
+     */
+    public TaskTree insert(int index, Task task) {
+        if (index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size());
+        }
+        Node[] parts = split(root, index);
+        Node single = new Node(task, randomPriority(), null, null);
+        return new TaskTree(merge(merge(parts[0], single), parts[1]));
+    }
+
+    /**
+     * Returns a tree with the task at the given position replaced, copying only the path to it.
+     *
+     * @param index The 0-based position.
+     * @param task The new task.
+     * @return The new tree.
+     */
+    public TaskTree set(int index, Task task) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size());
+        }
+        return new TaskTree(set(root, index, task));
+    }
+
+    /**
+     * Returns a tree with the tasks of the other tree appended, in O(log n) time.
+     *
+     * @param other The tree to append.
+     * @return The new tree.
+     */
+    public TaskTree concat(TaskTree other) {
+        return new TaskTree(merge(root, other.root));
+    }
+
+    /**
+     * Returns a tree without the task at the given position.
+     *
+     * @param index The 0-based position.
+     * @return The new tree.
+     */
+    public TaskTree remove(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size());
+        }
+        Node[] parts = split(root, index);
+        Node[] rest = split(parts[1], 1);
+        return new TaskTree(merge(parts[0], rest[1]));
+    }
+
+    /**
+     * Returns the tasks in order.
+     */
+    public List<Task> toList() {
+        List<Task> tasks = new ArrayList<>(size());
+        for (Task task : this) {
+            tasks.add(task);
+        }
+        return tasks;
+    }
+
+    @Override
+    public Iterator<Task> iterator() {
+        return new Iterator<>() {
+            private final Deque<Node> path = new ArrayDeque<>();
+
+            {
+                pushLeft(root);
+            }
+
+            private void pushLeft(Node node) {
+                for (Node n = node; n != null; n = n.left) {
+                    path.push(n);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return !path.isEmpty();
+            }
+
+            @Override
+            public Task next() {
+                if (path.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                Node node = path.pop();
+                pushLeft(node.right);
+                return node.task;
+            }
+        };
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static long randomPriority() {
+        return ThreadLocalRandom.current().nextLong() >>> 1;
+    }
+
+    /**
+     * Builds a balanced subtree of the tasks from {@code from} up to, but excluding, {@code to}.
+     * A node's priority is raised above its children's where needed to keep the heap order.
+     */
+    private static Node build(List<Task> tasks, int from, int to) {
+        if (from >= to) {
+            return null;
+        }
+        int middle = (from + to) >>> 1;
+        Node left = build(tasks, from, middle);
+        Node right = build(tasks, middle + 1, to);
+        long priority = Math.max(randomPriority(), Math.max(priority(left), priority(right)));
+        return new Node(tasks.get(middle), priority, left, right);
+    }
+
+    private static long priority(Node node) {
+        return node == null ? -1 : node.priority;
+    }
+
+    private static Node set(Node node, int index, Task task) {
+        int leftSize = size(node.left);
+        if (index < leftSize) {
+            return node.withChildren(set(node.left, index, task), node.right);
+        }
+        if (index == leftSize) {
+            return new Node(task, node.priority, node.left, node.right);
+        }
+        return node.withChildren(node.left, set(node.right, index - leftSize - 1, task));
+    }
+
+    /**
+     * Splits a subtree into its first {@code count} tasks and the rest.
+     */
+    private static Node[] split(Node node, int count) {
+        if (node == null) {
+            return new Node[] { null, null };
+        }
+        int leftSize = size(node.left);
+        if (count <= leftSize) {
+            Node[] parts = split(node.left, count);
+            return new Node[] { parts[0], node.withChildren(parts[1], node.right) };
+        }
+        Node[] parts = split(node.right, count - leftSize - 1);
+        return new Node[] { node.withChildren(node.left, parts[0]), parts[1] };
+    }
+
+    /**
+     * Joins two subtrees, with all tasks of the first before those of the second.
+     */
+    private static Node merge(Node first, Node second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        if (first.priority >= second.priority) {
+            return first.withChildren(first.left, merge(first.right, second));
+        }
+        return second.withChildren(merge(first, second.left), second.right);
+    }
+}
@@ -0,0 +1,415 @@
+package spark;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Encodes and decodes task lists in the text save format.
+ * <p>
+ * Each task is one line in the format produced by {@link Task#toSaveString()}, e.g.
+ * {@code "D | 0 | return book | Jan 25 2025, 12:00PM"}, prefixed with the task's ID as in
+ * {@code "#12 | T | 0 | read book"} once it has one. Lines without an ID (from older files) are given
+ * a new ID when loaded. Snapshots written in journaled mode start with a {@code "# generation <n>"}
+ * header line, and a {@code "# next-id <n>"} header line records the ID the next new task will get.
+ * <p>
+ * Decoding works directly on the bytes of the file: separators are found by scanning the buffer,
+ * and only the individual fields are turned into Strings. Since {@code ' '}, {@code '|'} and
+ * line breaks are ASCII, they can never appear inside a multi-byte UTF-8 character.
+ */
+public class TextTaskFormat {
+    private static final String GENERATION_HEADER = "# generation ";
+    private static final byte[] GENERATION_HEADER_BYTES = GENERATION_HEADER.getBytes(StandardCharsets.US_ASCII);
+    private static final String NEXT_ID_HEADER = "# next-id ";
+    private static final byte[] NEXT_ID_HEADER_BYTES = NEXT_ID_HEADER.getBytes(StandardCharsets.US_ASCII);
+    private static final String ID_PREFIX = "#";
+    private static final String LS = System.lineSeparator();
+    private static final int MAX_FIELDS = 5;
+    private static final int PARALLEL_THRESHOLD_BYTES = 4 * 1024 * 1024;
+    private static final int MIN_CHUNK_BYTES = 1024 * 1024;
+
+    // Reused for every line of one decode, so a line only allocates the Strings of its fields.
+    private final String[] fields = new String[MAX_FIELDS];
+    private byte[] scratch = new byte[256];
+
+    // Results of decodeLines.
+    private long generation = 0;
+    private long nextId = 0;
+    private int lineCount = 0;
+    private SparkException error;
+    private List<Task> decodedTasks;
+
+    private TextTaskFormat() {
+    }
+
+    /**
+     * Writes tasks as {@code " | "} separated lines, byte for byte the same as {@link Task#toSaveString()}.
+     */
+    public static class Encoder extends TaskEncoder {
+        private static final byte[] SEPARATOR = " | ".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] LINE_BREAK = LS.getBytes(StandardCharsets.US_ASCII);
+
+        // Reused for formatting deadlines and IDs.
+        private final StringBuilder dateText = new StringBuilder();
+
+        @Override
+        protected void writeHeader(int taskCount, long generation, long nextId) {
+            if (generation > 0) {
+                putUtf8(GENERATION_HEADER);
+                putUtf8(Long.toString(generation));
+                putBytes(LINE_BREAK);
+            }
+            if (nextId > 1) {
+                putUtf8(NEXT_ID_HEADER);
+                putUtf8(Long.toString(nextId));
+                putBytes(LINE_BREAK);
+            }
+        }
+
+        @Override
+        public void writeId(long id) {
+            if (id > 0) {
+                dateText.setLength(0);
+                dateText.append(ID_PREFIX).append(id);
+                putUtf8(dateText);
+                putBytes(SEPARATOR);
+            }
+        }
+
+        @Override
+        public void beginTask(char typeTag, boolean isDone) {
+            putByte(typeTag);
+            putBytes(SEPARATOR);
+            putByte(isDone ? '1' : '0');
+        }
+
+        @Override
+        public void writeString(String value) {
+            putBytes(SEPARATOR);
+            putUtf8(value);
+        }
+
+        @Override
+        public void writeDateTime(LocalDateTime value) {
+            putBytes(SEPARATOR);
+            putUtf8(DateCodec.format(value));
+        }
+
+        @Override
+        public void endTask() {
+            putBytes(LINE_BREAK);
+        }
+    }
+
+    /**
+     * Encodes the tasks into the text format.
+     *
+     * @param tasks The tasks to encode.
+     * @param generation The snapshot generation, written as a header line if greater than 0.
+     * @return The encoded bytes.
+     */
+    public static byte[] encode(TaskList tasks, long generation) {
+        ByteBuffer encoded = new Encoder().encodeSnapshot(tasks, generation);
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Decodes a text save file and appends its tasks to the given list.
+     * <p>
+     * Files of at least {@value #PARALLEL_THRESHOLD_BYTES} bytes are split into line-aligned chunks
+     * that are decoded in parallel on the common fork-join pool. The tasks are still added in file order.
+     *
+     * @param buffer The file contents, from its position up to its limit.
+     * @param tasks The task list to add the decoded tasks to.
+     * @return The snapshot generation from the header line, or 0 if there is none.
+     * @throws SparkException If any line is corrupted. The message names the first corrupted line.
+     */
+    public static long decode(ByteBuffer buffer, TaskList tasks) throws SparkException {
+        if (buffer.remaining() >= PARALLEL_THRESHOLD_BYTES) {
+            return decodeParallel(buffer, tasks);
+        }
+
+        TextTaskFormat decoder = new TextTaskFormat();
+        decoder.decodeLines(buffer, buffer.position(), buffer.limit(), tasks::addTask);
+        decoder.checkCorrupted(0);
+        tasks.reserveIds(decoder.nextId);
+        return decoder.generation;
+    }
+
+    private static long decodeParallel(ByteBuffer buffer, TaskList tasks) throws SparkException {
+        int[] bounds = splitIntoChunks(buffer);
+        List<TextTaskFormat> decoders = IntStream.range(0, bounds.length - 1)
+                .parallel()
+                .mapToObj(i -> {
+                    TextTaskFormat decoder = new TextTaskFormat();
+                    decoder.decodedTasks = new ArrayList<>();
+                    decoder.decodeLines(buffer, bounds[i], bounds[i + 1], decoder.decodedTasks::add);
+                    return decoder;
+                })
+                .collect(Collectors.toList());
+
+        long generation = 0;
+        int linesBefore = 0;
+        for (TextTaskFormat decoder : decoders) {
+            decoder.checkCorrupted(linesBefore);
+            for (Task task : decoder.decodedTasks) {
+                tasks.addTask(task);
+            }
+            generation = Math.max(generation, decoder.generation);
+            tasks.reserveIds(decoder.nextId);
+            linesBefore += decoder.lineCount;
+        }
+        return generation;
+    }
+
+    /**
+     * Picks chunk boundaries so that every chunk starts at the beginning of a line.
+     *
+     * @return The chunk start offsets, followed by the buffer limit.
+     */
+    private static int[] splitIntoChunks(ByteBuffer buffer) {
+        int start = buffer.position();
+        int limit = buffer.limit();
+        int chunks = Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism() * 4,
+                (limit - start) / MIN_CHUNK_BYTES));
+
+        int[] bounds = new int[chunks + 1];
+        bounds[0] = start;
+        for (int i = 1; i < chunks; i++) {
+            int bound = Math.max(bounds[i - 1], start + (int) ((long) (limit - start) * i / chunks));
+            while (bound < limit && buffer.get(bound - 1) != '\n') {
+                bound++;
+            }
+            bounds[i] = bound;
+        }
+        bounds[chunks] = limit;
+        return bounds;
+    }
+
+    /**
+     * Decodes the lines between {@code start} and {@code end}, stopping at the first corrupted line.
+     * <p>
+     * Errors are recorded rather than thrown, so that a chunk decoded in parallel can report the
+     * line number relative to the whole file once the chunks before it have been counted.
+     */
+    private void decodeLines(ByteBuffer buffer, int start, int end, Consumer<Task> sink) {
+        int lineStart = start;
+
+        while (lineStart < end) {
+            int lineEnd = lineStart;
+            while (lineEnd < end && buffer.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int nextLine = lineEnd + 1;
+            if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+            lineCount++;
+
+            try {
+                if (startsWith(buffer, lineStart, lineEnd, GENERATION_HEADER_BYTES)) {
+                    generation = parseHeaderNumber(readString(buffer, lineStart, lineEnd), GENERATION_HEADER);
+                } else if (startsWith(buffer, lineStart, lineEnd, NEXT_ID_HEADER_BYTES)) {
+                    nextId = parseHeaderNumber(readString(buffer, lineStart, lineEnd), NEXT_ID_HEADER);
+                } else if (lineEnd > lineStart) {
+                    sink.accept(decodeLine(buffer, lineStart, lineEnd));
+                }
+            } catch (SparkException e) {
+                error = e;
+                return;
+            }
+            lineStart = nextLine;
+        }
+    }
+
+    /**
+     * Throws the error recorded by {@link #decodeLines}, if any, with its line number in the file.
+     *
+     * @param linesBefore The number of lines in the file before the decoded range.
+     */
+    private void checkCorrupted(int linesBefore) throws SparkException {
+        if (error != null) {
+            throw new SparkException(error.getMessage() + " (line " + (linesBefore + lineCount) + ")");
+        }
+    }
+
+    /**
+     * Splits the line between {@code start} and {@code end} on {@code " | "} and converts it into a task.
+     */
+    private Task decodeLine(ByteBuffer buffer, int start, int end) throws SparkException {
+        long id = 0;
+        if (buffer.get(start) == '#') {
+            int i = start + 1;
+            while (i < end && buffer.get(i) >= '0' && buffer.get(i) <= '9') {
+                id = id * 10 + (buffer.get(i) - '0');
+                i++;
+            }
+            if (i == start + 1 || i + 3 > end
+                    || buffer.get(i) != ' ' || buffer.get(i + 1) != '|' || buffer.get(i + 2) != ' ') {
+                throw new SparkException("Saved file was corrupted");
+            }
+            start = i + 3;
+        }
+
+        int count = 0;
+        int fieldStart = start;
+        for (int i = start; i + 2 < end; i++) {
+            if (buffer.get(i) == ' ' && buffer.get(i + 1) == '|' && buffer.get(i + 2) == ' ') {
+                if (count < MAX_FIELDS) {
+                    fields[count] = readString(buffer, fieldStart, i);
+                }
+                count++;
+                fieldStart = i + 3;
+                i += 2;
+            }
+        }
+        if (count < MAX_FIELDS) {
+            fields[count] = readString(buffer, fieldStart, end);
+        }
+        count++;
+
+        // Like String.split, trailing empty fields do not count.
+        while (count > 0 && count <= MAX_FIELDS && fields[count - 1].isEmpty()) {
+            count--;
+        }
+        Task task = toTask(fields, count);
+        task.setId(id);
+        return task;
+    }
+
+    private String readString(ByteBuffer buffer, int start, int end) {
+        int length = end - start;
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + start, length, StandardCharsets.UTF_8);
+        }
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        buffer.get(start, scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(start + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses the number from a header line such as the snapshot generation.
+     */
+    private static long parseHeaderNumber(String header, String prefix) throws SparkException {
+        try {
+            return Long.parseLong(header.substring(prefix.length()).trim());
+        } catch (NumberFormatException e) {
+            throw new SparkException("Saved file was corrupted");
+        }
+    }
+
+    /**
+     * Returns the line for a task in the save file: its save string, prefixed with its ID if it has one.
+     *
+     * @param task The task.
+     * @return The line, without a line break.
+     */
+    public static String toLine(Task task) {
+        return task.getId() > 0
+                ? ID_PREFIX + task.getId() + " | " + task.toSaveString()
+                : task.toSaveString();
+    }
+
+    /**
+     * Parses a single line from the save file and converts it into a {@link Task}.
+     *
+     * @param line A line from the save file in the format {@code "[#<id> | ]<taskType> | <done> | <data>"}.
+     * @return The parsed {@link Task} object.
+     * @throws SparkException If the line format is corrupted or invalid.
+     */
+    public static Task parseLine(String line) throws SparkException {
+        long id = 0;
+        if (line.startsWith(ID_PREFIX)) {
+            String[] idAndTask = line.split(" \\| ", 2);
+            try {
+                id = Long.parseLong(idAndTask[0].substring(ID_PREFIX.length()));
+            } catch (NumberFormatException e) {
+                throw new SparkException("Saved file was corrupted");
+            }
+            line = idAndTask.length == 2 ? idAndTask[1] : "";
+        }
+
+        String[] parts = line.split(" \\| ");
+        Task task = toTask(parts, parts.length);
+        task.setId(id);
+        return task;
+    }
+
+    /**
+     * Converts the fields of a save file line into a {@link Task}.
+     *
+     * @param parts The fields of the line. Only the first {@code count} entries are used.
+     * @param count The number of fields in the line.
+     * @return The parsed {@link Task} object.
+     * @throws SparkException If the line format is corrupted or invalid.
+     */
+    private static Task toTask(String[] parts, int count) throws SparkException {
+        if (count < 3) {
+            throw new SparkException("Saved file was corrupted");
+        }
+
+        String taskType = parts[0];
+        String doneStatus = parts[1];
+        String description = parts[2];
+
+        Task task;
+        switch (taskType) {
+        case "T":
+            task = new Todo(description);
+            break;
+
+        case "D":
+            if (count < 4) {
+                throw new SparkException("Deadline task data was corrupted");
+            }
+            try {
+                LocalDateTime deadlineDateTime = DateCodec.parseFormatted(parts[3]);
+                task = new Deadline(description, deadlineDateTime);
+            } catch (DateTimeParseException e) {
+                throw new SparkException("Deadline task data was corrupted");
+            }
+            break;
+
+        case "E":
+            if (count < 5) {
+                throw new SparkException("Event task data was corrupted");
+            }
+            task = new Event(description, parts[3], parts[4]);
+            break;
+
+        default:
+            throw new SparkException("Unknown task type in save data: " + taskType);
+        }
+
+        if (doneStatus.equals("1")) {
+            task.markAsDone();
+        } else {
+            task.markAsNotDone();
+        }
+
+        return task;
+    }
+}
@@ -1,5 +1,6 @@
 package spark;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
 
@@ -48,6 +49,7 @@ public class Ui {
         return box(
                 "Done. I've added this task:",
                 "   " + task,
+                "Its ID is #" + task.getId() + ".",
                 "Now you have " + totalTasks + " tasks in the list"
         );
     }
@@ -64,8 +66,9 @@ public class Ui {
         StringBuilder sb = new StringBuilder();
         sb.append(SEPARATOR).append(LS);
         sb.append("Here are the tasks in your list:").append(LS);
-        for (int i = 0; i < tasks.getSize(); i++) {
-            sb.append((i + 1)).append(". ").append(tasks.getTask(i)).append(LS);
+        List<Task> all = tasks.getAll();
+        for (int i = 0; i < all.size(); i++) {
+            sb.append((i + 1)).append(". ").append(all.get(i)).append(LS);
         }
         sb.append(SEPARATOR);
         return sb.toString();
@@ -107,6 +110,71 @@ public class Ui {
         return box("OK, I've marked this task as not done yet:", "   " + task);
     }
 
+    /**
+     * Returns the message shown after several tasks were marked as done by one command.
+     * @param tasks The tasks that were marked.
+     */
+    public String getMarkAllMessage(List<Task> tasks) {
+        return box(withTasks("Nice! I've marked these " + tasks.size() + " tasks as done:", tasks, null));
+    }
+
+    /**
+     * Returns the message shown after several tasks were marked as not done by one command.
+     * @param tasks The tasks that were marked as not done.
+     */
+    public String getUnmarkAllMessage(List<Task> tasks) {
+        return box(withTasks("OK, I've marked these " + tasks.size() + " tasks as not done yet:", tasks, null));
+    }
+
+    /**
+     * Returns the message shown after several tasks were deleted by one command.
+     * @param tasks The tasks that were deleted.
+     * @param totalTasks The total number of tasks after deletion.
+     */
+    public String getDeletedAllMessage(List<Task> tasks, int totalTasks) {
+        return box(withTasks("Done. I've deleted these " + tasks.size() + " tasks:", tasks,
+                "Now you have " + totalTasks + " tasks in the list"));
+    }
+
+    private static String[] withTasks(String header, List<Task> tasks, String footer) {
+        List<String> lines = new ArrayList<>(tasks.size() + 2);
+        lines.add(header);
+        for (Task task : tasks) {
+            lines.add("   " + task);
+        }
+        if (footer != null) {
+            lines.add(footer);
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    /**
+     * Returns the message shown after a change was undone.
+     * @param change A description of the change.
+     */
+    public String getUndoMessage(String change) {
+        return box("Undone: " + change);
+    }
+
+    /**
+     * Returns the message shown after an undone change was made again.
+     * @param change A description of the change.
+     */
+    public String getRedoMessage(String change) {
+        return box("Redone: " + change);
+    }
+
+    /**
+     * Returns the summary shown after a script of commands has run.
+     * @param commandCount The number of commands run.
+     * @param elapsedNanos How long running them took, including saving.
+     */
+    public String getScriptSummary(long commandCount, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        long perSecond = seconds > 0 ? Math.round(commandCount / seconds) : commandCount;
+        return String.format("Ran %d commands in %.3f s (%d commands/s)", commandCount, seconds, perSecond);
+    }
+
     /**
      * Prints an error message to the user.
      * @param message message to be printed
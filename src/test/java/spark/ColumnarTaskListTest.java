@@ -0,0 +1,146 @@
+package spark;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ColumnarTaskListTest {
+    @TempDir
+    Path tempDir;
+
+    private static TaskList fill(TaskList tasks) {
+        tasks.addTask(new Todo("Read Book"));
+        tasks.addTask(new Deadline("return book", LocalDateTime.of(2024, 3, 2, 18, 0)));
+        tasks.addTask(new Event("caf\u00e9 meetup", "Mon 2pm", "4pm"));
+        tasks.addTask(new Deadline("submit report", LocalDateTime.of(2024, 1, 15, 9, 30)));
+        tasks.addTask(new Todo("buy books"));
+        return tasks;
+    }
+
+    private static void assertSameTasks(List<Task> expected, List<Task> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).toString(), actual.get(i).toString());
+            assertEquals(expected.get(i).getId(), actual.get(i).getId());
+        }
+    }
+
+    private static List<Task> all(TaskList tasks) {
+        List<Task> all = new ArrayList<>();
+        for (int i = 0; i < tasks.getSize(); i++) {
+            all.add(tasks.getTask(i));
+        }
+        return all;
+    }
+
+    @Test
+    public void getTask_afterMarkAndDelete_matchesTaskList() throws SparkException {
+        TaskList expected = fill(new TaskList());
+        TaskList columnar = fill(new ColumnarTaskList());
+
+        for (TaskList tasks : List.of(expected, columnar)) {
+            tasks.mark(2);
+            tasks.mark(4);
+            tasks.unmark(4);
+            tasks.deleteTask(0);
+            tasks.addTask(new Todo("after delete"));
+        }
+
+        assertSameTasks(all(expected), all(columnar));
+        assertTrue(columnar.getTask(1).isDone());
+        assertEquals("Mon 2pm", ((Event) columnar.getTask(1)).getFrom());
+    }
+
+    @Test
+    public void indexOfId_afterAddDeleteAndSort_findsCurrentRow() throws SparkException {
+        TaskList expected = fill(new TaskList());
+        TaskList columnar = fill(new ColumnarTaskList());
+
+        for (TaskList tasks : List.of(expected, columnar)) {
+            long firstId = tasks.getTask(0).getId();
+            assertEquals(0, tasks.indexOfId(firstId));
+            tasks.addTask(new Todo("added"));
+            tasks.deleteTask(0);
+            tasks.sortByDateTime();
+            assertThrows(SparkException.class, () -> tasks.indexOfId(firstId));
+        }
+
+        for (int i = 0; i < expected.getSize(); i++) {
+            long id = expected.getTask(i).getId();
+            assertEquals(i, columnar.indexOfId(id));
+            assertEquals(expected.getTask(i).toString(), columnar.getTaskById(id).toString());
+        }
+    }
+
+    @Test
+    public void find_mixedCaseAndNonAscii_matchesTaskList() {
+        TaskList expected = fill(new TaskList());
+        TaskList columnar = fill(new ColumnarTaskList());
+
+        for (String keyword : List.of("BOOK", "caf\u00e9", "CAF", "ok", "", "missing")) {
+            assertSameTasks(expected.find(keyword), columnar.find(keyword));
+        }
+    }
+
+    @Test
+    public void sortByDateTime_deadlines_sortsColumnsStably() throws SparkException {
+        TaskList expected = fill(new TaskList());
+        TaskList columnar = fill(new ColumnarTaskList());
+
+        assertSameTasks(expected.findDueBefore(LocalDateTime.of(2024, 3, 2, 18, 0)),
+                columnar.findDueBefore(LocalDateTime.of(2024, 3, 2, 18, 0)));
+        assertSameTasks(expected.getSortedByDateTime(), columnar.getSortedByDateTime());
+
+        columnar.mark(2);
+        assertTrue(columnar.sortByDateTime());
+        assertEquals("submit report", columnar.getTask(0).getDescription());
+        assertEquals("caf\u00e9 meetup", columnar.getTask(3).getDescription());
+        assertTrue(columnar.getTask(3).isDone());
+        assertFalse(columnar.sortByDateTime());
+
+        assertEquals(3, columnar.indexOfId(columnar.getTask(3).getId()));
+        assertNull(columnar.getTaskById(99));
+    }
+
+    @Test
+    public void deleteTask_manyTasks_compactsTextAndKeepsOrder() throws SparkException {
+        TaskList tasks = new ColumnarTaskList();
+        for (int i = 0; i < 2000; i++) {
+            tasks.addTask(new Todo("task number " + i));
+        }
+        for (int i = 0; i < 1500; i++) {
+            tasks.deleteTask(0);
+        }
+
+        assertEquals(500, tasks.getSize());
+        for (int i = 0; i < tasks.getSize(); i++) {
+            assertEquals("task number " + (1500 + i), tasks.getTask(i).getDescription());
+        }
+        assertEquals(1, tasks.find("number 1999").size());
+    }
+
+    @Test
+    public void load_intoColumnarList_readsSavedTasks() throws SparkException {
+        Storage storage = new Storage(tempDir.resolve("spark.txt"), Storage.Layout.JOURNALED);
+        TaskList saved = fill(new TaskList());
+        saved.mark(1);
+        storage.save(saved);
+
+        TaskList loaded = new Storage(tempDir.resolve("spark.txt"), Storage.Layout.JOURNALED)
+                .load(new ColumnarTaskList());
+
+        assertTrue(loaded instanceof ColumnarTaskList);
+        assertSameTasks(all(saved), all(loaded));
+        assertEquals(saved.getNextId(), loaded.getNextId());
+    }
+}
@@ -0,0 +1,35 @@
+package spark;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CommandRegistryTest {
+
+    @Test
+    public void get_registeredWord_runsItsHandler() throws SparkException {
+        CommandRegistry commands = new CommandRegistry()
+                .register(Command.reading("echo", rest -> "echo " + rest))
+                .register(Command.changing("todo", rest -> "added " + rest));
+
+        assertEquals("echo hi", commands.get("echo").run("hi"));
+        assertEquals("added read book", commands.get("todo").run("read book"));
+    }
+
+    @Test
+    public void get_unknownWord_throwsSparkException() {
+        CommandRegistry commands = new CommandRegistry().register(Command.reading("list", rest -> ""));
+        assertThrows(SparkException.class, () -> commands.get("lst"));
+        assertThrows(SparkException.class, () -> commands.get("LIST"));
+    }
+
+    @Test
+    public void isReadOnly_savingCommand_returnsFalse() {
+        assertTrue(Command.reading("list", rest -> "").isReadOnly());
+        assertFalse(Command.changing("mark", rest -> "").isReadOnly());
+        assertFalse(new Command("bye", false, true, rest -> "").isReadOnly());
+    }
+}
@@ -0,0 +1,94 @@
+package spark;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConcurrentTaskListTest {
+    @Test
+    public void mark_earlierSnapshot_isNotChanged() throws SparkException {
+        TaskList tasks = new ConcurrentTaskList();
+        tasks.addTask(new Todo("read book"));
+        tasks.addTask(new Todo("return book"));
+        List<Task> before = tasks.getAll();
+
+        Task marked = tasks.mark(1);
+
+        assertFalse(before.get(1).isDone());
+        assertTrue(marked.isDone());
+        assertNotSame(before.get(1), marked);
+        assertEquals(before.get(1).getId(), marked.getId());
+        assertSame(marked, tasks.getTask(1));
+    }
+
+    @Test
+    public void mark_indexedTasks_keepsOrderInIndexes() throws SparkException {
+        TaskList tasks = new ConcurrentTaskList();
+        tasks.addTask(new Deadline("book flight", LocalDateTime.of(2024, 5, 1, 9, 0)));
+        tasks.addTask(new Deadline("book hotel", LocalDateTime.of(2024, 5, 1, 9, 0)));
+        tasks.addTask(new Todo("book taxi"));
+        tasks.find("book");
+        tasks.getSortedByDateTime();
+
+        tasks.mark(0);
+
+        List<Task> found = tasks.find("book");
+        assertEquals(3, found.size());
+        assertTrue(found.get(0).isDone());
+        assertEquals("book hotel", found.get(1).getDescription());
+        List<Task> due = tasks.findDueBefore(LocalDateTime.of(2024, 6, 1, 0, 0));
+        assertTrue(due.get(0).isDone());
+        assertEquals("book hotel", due.get(1).getDescription());
+        assertSame(tasks.getTask(0), tasks.getTaskById(tasks.getTask(0).getId()));
+    }
+
+    @Test
+    public void addTask_concurrentWritersAndReaders_keepsEveryTask() throws Exception {
+        TaskList tasks = new ConcurrentTaskList();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int writer = 0; writer < 2; writer++) {
+            int w = writer;
+            futures.add(pool.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    tasks.addTask(new Todo("writer " + w + " task " + i));
+                    tasks.mark(tasks.getSize() - 1);
+                }
+                return null;
+            }));
+        }
+        for (int reader = 0; reader < 2; reader++) {
+            futures.add(pool.submit(() -> {
+                for (int i = 0; i < 200; i++) {
+                    List<Task> snapshot = tasks.getAll();
+                    for (int j = 1; j < snapshot.size(); j++) {
+                        assertTrue(snapshot.get(j - 1).getId() != snapshot.get(j).getId());
+                    }
+                    tasks.find("task 1");
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(1000, tasks.getSize());
+        assertEquals(1000, tasks.getNextId() - 1);
+        assertEquals(tasks.find("writer 0").size(), 500);
+    }
+}
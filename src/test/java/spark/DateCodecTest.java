@@ -0,0 +1,43 @@
+package spark;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class DateCodecTest {
+
+    @Test
+    public void parseInput_validAndUnusualDates_matchesFormatter() {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HHmm");
+        String[] inputs = {"2025-01-25 1200", "2024-02-29 0000", "2025-12-31 2359",
+            "2025-02-30 1200", "2025-04-31 0930", "2025-01-01 2400"};
+        for (String input : inputs) {
+            assertEquals(LocalDateTime.parse(input, formatter), DateCodec.parseInput(input), input);
+        }
+    }
+
+    @Test
+    public void parseInput_invalidText_throwsDateTimeParseException() {
+        String[] inputs = {"2025-13-01 1200", "2025-01-32 1200", "2025-01-01 1260", "0000-01-01 0000",
+            "2025-1-01 1200", "2025-01-01", "2025/01/01 1200", "tomorrow", "2025-01-01 12:00"};
+        for (String input : inputs) {
+            assertThrows(DateTimeParseException.class, () -> DateCodec.parseInput(input), input);
+        }
+    }
+
+    @Test
+    public void format_sameDateTime_reusesFormattedString() {
+        LocalDateTime dateTime = LocalDateTime.of(2025, 1, 25, 12, 0);
+        String formatted = DateCodec.format(dateTime);
+
+        assertEquals(DateTimeFormatter.ofPattern("MMM d yyyy, h:mma").format(dateTime), formatted);
+        assertSame(formatted, DateCodec.format(LocalDateTime.of(2025, 1, 25, 12, 0)));
+        assertEquals(dateTime, DateCodec.parseFormatted(formatted));
+    }
+}
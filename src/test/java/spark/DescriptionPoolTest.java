@@ -0,0 +1,51 @@
+package spark;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class DescriptionPoolTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void intern_equalDescriptions_returnsSameInstance() {
+        String first = DescriptionPool.intern(new String("pay rent"));
+        String second = DescriptionPool.intern(new String("pay rent"));
+
+        assertSame(first, second);
+        assertSame(first, new Todo(new String("pay rent")).getDescription());
+    }
+
+    @Test
+    public void load_repeatedDescriptions_sharesOneString() throws SparkException {
+        for (Storage.Format format : Storage.Format.values()) {
+            Path file = tempDir.resolve("spark-" + format + ".txt");
+            Storage storage = new Storage(file);
+            storage.setFormat(format);
+            TaskList tasks = new TaskList();
+            for (int i = 0; i < 100; i++) {
+                tasks.addTask(new Todo("standup"));
+            }
+            storage.save(tasks);
+
+            TaskList loaded = new Storage(file).load();
+            for (int i = 1; i < loaded.getSize(); i++) {
+                assertSame(loaded.getTask(0).getDescription(), loaded.getTask(i).getDescription());
+            }
+        }
+    }
+
+    @Test
+    public void toLowerCase_pooledAndUnpooled_matchesString() {
+        String pooled = DescriptionPool.intern("Review PR");
+
+        assertSame(DescriptionPool.toLowerCase(pooled), DescriptionPool.toLowerCase(pooled));
+        assertEquals("review pr", DescriptionPool.toLowerCase(pooled));
+        assertEquals("not pooled", DescriptionPool.toLowerCase("NOT Pooled"));
+    }
+}
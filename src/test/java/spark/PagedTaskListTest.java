@@ -0,0 +1,120 @@
+package spark;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PagedTaskListTest {
+    private static final int PAGE = ShardedTaskFiles.SEGMENT_SIZE;
+
+    @TempDir
+    Path tempDir;
+
+    private Storage saveTasks(int count) throws SparkException {
+        Storage storage = new Storage(tempDir.resolve("spark.txt"), Storage.Layout.SHARDED);
+        TaskList tasks = new TaskList();
+        for (int i = 0; i < count; i++) {
+            tasks.addTask(new Todo("task " + i));
+        }
+        storage.save(tasks);
+        return storage;
+    }
+
+    @Test
+    public void getTask_manyPages_keepsAtMostMaxResidentPages() throws SparkException {
+        saveTasks(PAGE * 3 + 1);
+        Storage storage = new Storage(tempDir.resolve("spark.txt"), Storage.Layout.SHARDED);
+        PagedTaskList tasks = (PagedTaskList) storage.loadLazily(2);
+
+        assertEquals(PAGE * 3 + 1, tasks.getSize());
+        assertEquals(0, tasks.getResidentPageCount(), "No page should be read before it is needed");
+
+        assertEquals("task " + (PAGE * 3), tasks.getTask(PAGE * 3).getDescription());
+        assertEquals(1, tasks.getResidentPageCount());
+        for (int i = 0; i < tasks.getSize(); i++) {
+            assertEquals("task " + i, tasks.getTask(i).getDescription());
+        }
+        assertEquals(2, tasks.getResidentPageCount());
+    }
+
+    @Test
+    public void deleteTask_savedThroughStorage_survivesEviction() throws SparkException {
+        saveTasks(PAGE * 2);
+        Storage storage = new Storage(tempDir.resolve("spark.txt"), Storage.Layout.SHARDED);
+        TaskList tasks = storage.loadLazily(1);
+
+        tasks.mark(PAGE + 1);
+        storage.saveMark(tasks, PAGE + 1);
+        tasks.deleteTask(0);
+        storage.saveDelete(tasks, 0);
+        Todo added = new Todo("added");
+        tasks.addTask(added);
+        storage.saveAdd(tasks, added);
+
+        // Reading the first page again evicts the changed last page, which is then read back from disk.
+        assertEquals("task 1", tasks.getTask(0).getDescription());
+        assertTrue(tasks.getTask(PAGE).isDone());
+        assertEquals("added", tasks.getTask(tasks.getSize() - 1).getDescription());
+
+        TaskList reloaded = new Storage(tempDir.resolve("spark.txt"), Storage.Layout.SHARDED).load();
+        assertEquals(PAGE * 2, reloaded.getSize());
+        assertTrue(reloaded.getTask(PAGE).isDone());
+    }
+
+    @Test
+    public void sortByDateTime_pagedList_matchesPlainList() throws SparkException {
+        Storage storage = new Storage(tempDir.resolve("spark.txt"), Storage.Layout.SHARDED);
+        TaskList tasks = storage.loadLazily(1);
+        for (int i = 0; i < PAGE + 3; i++) {
+            Task task = new Deadline("task " + i, LocalDateTime.of(2025, 1, 1, 0, 0).minusHours(i));
+            tasks.addTask(task);
+            storage.saveAdd(tasks, task);
+        }
+
+        tasks.sortByDateTime();
+        storage.saveSort(tasks);
+
+        TaskList reloaded = new Storage(tempDir.resolve("spark.txt"), Storage.Layout.SHARDED).load();
+        assertEquals("task " + (PAGE + 2), reloaded.getTask(0).getDescription());
+        assertEquals("task 0", reloaded.getTask(PAGE + 2).getDescription());
+    }
+
+    @Test
+    public void sortByDateTime_alreadySorted_returnsFalseAndKeepsPages() throws Exception {
+        saveTasks(PAGE + 3);
+        Storage storage = new Storage(tempDir.resolve("spark.txt"), Storage.Layout.SHARDED);
+        PagedTaskList tasks = (PagedTaskList) storage.loadLazily(1);
+        tasks.deleteTask(0);
+        storage.saveDelete(tasks, 0);
+
+        assertFalse(tasks.sortByDateTime(), "Undated tasks are already in order");
+        assertEquals(List.of(PAGE - 1, 3), tasks.getPageCounts());
+        assertEquals(1, tasks.getResidentPageCount(), "No page should be left unsaved");
+        assertEquals("task 1", tasks.getTask(0).getDescription());
+    }
+
+    @Test
+    public void indexOfId_pageReadBefore_readsOnlyThatPage() throws Exception {
+        saveTasks(PAGE * 3);
+        Storage storage = new Storage(tempDir.resolve("spark.txt"), Storage.Layout.SHARDED);
+        PagedTaskList tasks = (PagedTaskList) storage.loadLazily(1);
+        long lastPageId = tasks.getTask(PAGE * 2 + 5).getId();
+        long firstPageId = tasks.getTask(5).getId();
+
+        // The middle page was never read, so looking up a task on another page must not need it.
+        Files.delete(tempDir.resolve("spark.txt.segments").resolve("segment-1"));
+        assertEquals(PAGE * 2 + 5, tasks.indexOfId(lastPageId));
+        assertEquals("task " + (PAGE * 2 + 5), tasks.getTaskById(lastPageId).getDescription());
+        assertEquals(5, tasks.indexOfId(firstPageId));
+        assertThrows(PagedTaskList.PageReadException.class, () -> tasks.indexOfId(PAGE * 10));
+    }
+}
@@ -0,0 +1,87 @@
+package spark;
+
+/**
+ * Compares the speed of {@link Parser} with the regular-expression splitting it used before
+ * {@link CommandTokenizer}.
+ * <p>
+ * This is not a test. Run it after {@code gradlew testClasses} with
+ * {@code java -cp build/classes/java/main:build/classes/java/test spark.ParserBenchmark}.
+ * Each round parses the same mix of commands with both versions, and the last round's times are
+ * printed once the JIT has warmed up.
+ */
+public class ParserBenchmark {
+    private static final String[] INPUTS = {
+        "todo read book",
+        "deadline return book /by 2025-01-25 1200",
+        "event project meeting /from Mon 2pm /to Mon 4pm",
+        "   deadline   submit report   /by   2025-02-01 0900  ",
+        "mark 3",
+        "find book",
+        "list",
+    };
+    private static final int ROUNDS = 10;
+    private static final int ITERATIONS = 200_000;
+
+    public static void main(String[] args) throws SparkException {
+        long checksum = 0;
+        long tokenizerNanos = 0;
+        long regexNanos = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                checksum += parseWithTokenizer(INPUTS[i % INPUTS.length]);
+            }
+            tokenizerNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                checksum += parseWithRegex(INPUTS[i % INPUTS.length]);
+            }
+            regexNanos = System.nanoTime() - start;
+        }
+
+        System.out.printf("tokenizer: %d ns per command%n", tokenizerNanos / ITERATIONS);
+        System.out.printf("regex:     %d ns per command%n", regexNanos / ITERATIONS);
+        System.out.println("(checksum " + checksum + ")");
+    }
+
+    /**
+     * Splits a command with {@link Parser}, returning the total length of the parts.
+     */
+    private static int parseWithTokenizer(String input) throws SparkException {
+        String[] parts = Parser.parse(input);
+        switch (parts[0]) {
+        case "deadline":
+            return parts[1].length() + Parser.parseDeadline(parts[1]).getDescription().length();
+        case "event":
+            return parts[1].length() + Parser.parseEvent(parts[1]).getDescription().length();
+        default:
+            return parts[0].length() + parts[1].length();
+        }
+    }
+
+    /**
+     * Splits a command the way {@link Parser} did with regular expressions, returning the total
+     * length of the parts.
+     */
+    private static int parseWithRegex(String input) throws SparkException {
+        String[] sections = input.trim().split(" ", 2);
+        String command = sections[0];
+        String rest = sections.length == 2 ? sections[1].trim() : "";
+        switch (command) {
+        case "deadline": {
+            String[] deadlineArgs = rest.split("\\s*/by\\s*", 2);
+            return rest.length() + new Deadline(deadlineArgs[0].trim(),
+                    Parser.parseDue(deadlineArgs[1].trim())).getDescription().length();
+        }
+        case "event": {
+            String[] eventArgs = rest.split("\\s*/from\\s*", 2);
+            String[] fromTo = eventArgs[1].trim().split("\\s*/to\\s*", 2);
+            return rest.length() + new Event(eventArgs[0].trim(), fromTo[0].trim(),
+                    fromTo[1].trim()).getDescription().length();
+        }
+        default:
+            return command.length() + rest.length();
+        }
+    }
+}
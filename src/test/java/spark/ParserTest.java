@@ -21,6 +21,12 @@ public class ParserTest {
         assertThrows(SparkException.class, () -> Parser.parse("   "));
     }
 
+    @Test
+    public void parse_extraWhitespace_trimsCommandAndRest() throws SparkException {
+        assertArrayEquals(new String[] {"list", ""}, Parser.parse("  list \t"));
+        assertArrayEquals(new String[] {"find", "a  b"}, Parser.parse("\tfind   a  b  "));
+    }
+
     @Test
     public void parseIndex_validInput_returnsZeroBasedIndex() throws SparkException {
         assertEquals(0, Parser.parseIndex("1", "Error"), "Index 1 should convert to 0");
@@ -33,6 +39,14 @@ public class ParserTest {
         assertThrows(SparkException.class, () -> Parser.parseIndex("abc", "Error"));
     }
 
+    @Test
+    public void parseTaskId_hashPrefixedId_returnsId() throws SparkException {
+        assertTrue(Parser.isTaskId(" #12"));
+        assertEquals(12, Parser.parseTaskId(" #12", "Error"));
+        assertThrows(SparkException.class, () -> Parser.parseTaskId("#abc", "Error"));
+        assertThrows(SparkException.class, () -> Parser.parseTaskId("#0", "Error"));
+    }
+
     @Test
     public void parseTodo_validInput_returnsTodo() throws SparkException {
         Todo t = Parser.parseTodo("buy groceries");
@@ -76,6 +90,18 @@ public class ParserTest {
         assertFalse(e.isDone());
     }
 
+    @Test
+    public void parseEvent_flagsWithoutSpaces_trimsEachPart() throws SparkException {
+        Event e = Parser.parseEvent("  party/from Mon 2pm   /to   Mon 4pm ");
+        assertEquals("party", e.getDescription());
+        assertEquals(new Event("party", "Mon 2pm", "Mon 4pm").toString(), e.toString());
+    }
+
+    @Test
+    public void parseEvent_toBeforeFrom_throwsSparkException() {
+        assertThrows(SparkException.class, () -> Parser.parseEvent("party /to Mon 4pm /from Mon 2pm"));
+    }
+
     @Test
     public void parseEvent_missingFrom_throwsSparkException() {
         assertThrows(SparkException.class, () -> Parser.parseEvent("team meeting /to 2025-01-25 1100"));
@@ -101,6 +127,27 @@ public class ParserTest {
     public void parseFind_emptyInput_throwsSparkException() {
         assertThrows(SparkException.class, () -> Parser.parseFind(""));
     }
-}
 
+    @Test
+    public void parseDue_invalidDate_throwsSparkException() {
+        assertThrows(SparkException.class, () -> Parser.parseDue("next week"));
+    }
+
+    @Test
+    public void parseIndices_rangesAndNumbers_returnsSortedDistinctIndices() throws SparkException {
+        assertArrayEquals(new int[] {2, 6, 8, 9, 10}, Parser.parseIndices("3, 9-11,7,10", 20, "format"));
+        assertArrayEquals(new int[] {0, 1, 2}, Parser.parseIndices("all", 3, "format"));
+        assertTrue(Parser.isIndexList("1-5"));
+        assertFalse(Parser.isIndexList("5"));
+        assertFalse(Parser.isIndexList("#5"));
+    }
 
+    @Test
+    public void parseIndices_invalidEntries_throwsSparkException() {
+        assertThrows(SparkException.class, () -> Parser.parseIndices("5-3", 10, "format"));
+        assertThrows(SparkException.class, () -> Parser.parseIndices("1-2-3", 10, "format"));
+        assertThrows(SparkException.class, () -> Parser.parseIndices("1,x", 10, "format"));
+        assertThrows(SparkException.class, () -> Parser.parseIndices("1-11", 10, "format"));
+        assertThrows(SparkException.class, () -> Parser.parseIndices("0", 10, "format"));
+    }
+}
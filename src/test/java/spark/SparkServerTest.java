@@ -0,0 +1,116 @@
+package spark;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class SparkServerTest {
+
+    @Test
+    public void serve_manyClients_answersEachInOrder() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        SparkServer server = new SparkServer(line -> {
+            calls.incrementAndGet();
+            return "got" + System.lineSeparator() + line;
+        }, 0);
+        Thread serving = startServing(server);
+        try {
+            List<Socket> clients = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                clients.add(new Socket(InetAddress.getLoopbackAddress(), server.getPort()));
+            }
+            for (int i = 0; i < clients.size(); i++) {
+                // Both commands in one write, so the second is still buffered while the first runs.
+                send(clients.get(i), "first " + i + "\r\nsecond " + i + "\n");
+            }
+            for (int i = 0; i < clients.size(); i++) {
+                BufferedReader reader = reader(clients.get(i));
+                assertEquals(List.of("got", "first " + i), readReply(reader));
+                assertEquals(List.of("got", "second " + i), readReply(reader));
+                clients.get(i).close();
+            }
+            assertEquals(400, calls.get());
+        } finally {
+            server.close();
+            serving.join(5000);
+        }
+    }
+
+    @Test
+    public void serve_bye_repliesThenClosesConnection() throws Exception {
+        SparkServer server = new SparkServer(line -> line.isEmpty() ? "" : "ok", 0);
+        Thread serving = startServing(server);
+        try (Socket client = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            send(client, "\n bye\n");
+            BufferedReader reader = reader(client);
+            assertEquals(List.of(), readReply(reader));
+            assertEquals(List.of("ok"), readReply(reader));
+            assertNull(reader.readLine());
+        } finally {
+            server.close();
+            serving.join(5000);
+        }
+    }
+
+    @Test
+    public void serve_replyWithEmptyLines_sendsWholeReply() throws Exception {
+        String ls = System.lineSeparator();
+        SparkServer server = new SparkServer(line -> ls + "1. " + line + ls + ls + "2. " + line + ls, 0);
+        Thread serving = startServing(server);
+        try (Socket client = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            send(client, "list\nfind\n");
+            BufferedReader reader = reader(client);
+            assertEquals(List.of("", "1. list", "", "2. list", ""), readReply(reader));
+            assertEquals(List.of("", "1. find", "", "2. find", ""), readReply(reader));
+        } finally {
+            server.close();
+            serving.join(5000);
+        }
+    }
+
+    private static Thread startServing(SparkServer server) {
+        Thread serving = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        serving.start();
+        return serving;
+    }
+
+    private static void send(Socket client, String text) throws IOException {
+        OutputStream out = client.getOutputStream();
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static BufferedReader reader(Socket client) throws IOException {
+        return new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads the lines of one reply, as many as the line before them says.
+     */
+    private static List<String> readReply(BufferedReader reader) throws IOException {
+        int count = Integer.parseInt(reader.readLine());
+        List<String> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            lines.add(reader.readLine());
+        }
+        return lines;
+    }
+}
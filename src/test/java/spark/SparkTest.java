@@ -0,0 +1,70 @@
+package spark;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SparkTest {
+    @TempDir
+    Path tempDir;
+
+    private Spark newSpark() {
+        return new Spark(new Storage(tempDir.resolve("spark.txt")), false);
+    }
+
+    @Test
+    public void getResponse_markOrUnmarkOutOfRange_repliesWithError() {
+        Spark spark = newSpark();
+        spark.getResponse("todo read book");
+
+        assertTrue(spark.getResponse("mark 5").contains("Task number must be between 1 and 1."));
+        assertTrue(spark.getResponse("unmark 0").contains("Task number must be between 1 and 1."));
+        assertTrue(spark.getResponse("mark 1").contains("[X] read book"));
+    }
+
+    @Test
+    public void getResponse_corruptedSegment_repliesWithErrorAndKeepsFile() throws Exception {
+        Path saveFile = tempDir.resolve("spark.txt");
+        Spark spark = new Spark(new Storage(saveFile, Storage.Layout.SHARDED), false);
+        spark.getResponse("todo read book");
+        Path segment;
+        try (Stream<Path> files = Files.list(tempDir.resolve("spark.txt.segments"))) {
+            segment = files.filter(file -> file.getFileName().toString().startsWith("segment-"))
+                    .findFirst().orElseThrow();
+        }
+        Files.writeString(segment, "X | 0 | broken");
+
+        Spark reloaded = new Spark(new Storage(saveFile, Storage.Layout.SHARDED), false);
+        for (String command : new String[] {"list", "find book", "todo return book"}) {
+            String response = reloaded.getResponse(command);
+            assertTrue(response.contains("Saved tasks could not be loaded"), command + ": " + response);
+        }
+        assertEquals("X | 0 | broken", Files.readString(segment));
+    }
+
+    @Test
+    public void getResponse_columnarListChosen_runsCommandsAndSaves() {
+        System.setProperty("spark.list", "columnar");
+        try {
+            Spark spark = newSpark();
+            spark.getResponse("todo read book");
+            spark.getResponse("deadline return book /by 2025-01-25 1200");
+            assertTrue(spark.getResponse("mark #1").contains("[X] read book"));
+            spark.getResponse("sort");
+            assertTrue(spark.getResponse("list").contains("1. [D][ ] return book"));
+            spark.getResponse("delete 1");
+            spark.getResponse("undo");
+            assertTrue(spark.getResponse("find book").contains("2. [T][X] read book"));
+        } finally {
+            System.clearProperty("spark.list");
+        }
+
+        assertTrue(newSpark().getResponse("list").contains("1. [D][ ] return book"));
+    }
+}
@@ -0,0 +1,477 @@
+package spark;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StorageTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void load_missingFile_returnsEmptyList() throws SparkException {
+        Storage storage = new Storage(tempDir.resolve("spark.txt"));
+        assertEquals(0, storage.load().getSize());
+    }
+
+    @Test
+    public void save_thenLoad_restoresTasks() throws SparkException {
+        Storage storage = new Storage(tempDir.resolve("spark.txt"));
+        TaskList tasks = new TaskList();
+        tasks.addTask(new Todo("read book"));
+        tasks.addTask(new Deadline("return book", LocalDateTime.of(2025, 1, 25, 12, 0)));
+        tasks.addTask(new Event("meeting", "2pm", "4pm"));
+        tasks.mark(1);
+        storage.save(tasks);
+
+        TaskList loaded = storage.load();
+        assertEquals(3, loaded.getSize());
+        for (int i = 0; i < tasks.getSize(); i++) {
+            assertEquals(tasks.getTask(i).toSaveString(), loaded.getTask(i).toSaveString());
+        }
+    }
+
+    @Test
+    public void load_journaledChanges_replaysOnSnapshot() throws SparkException {
+        Path file = tempDir.resolve("spark.txt");
+        Storage storage = new Storage(file, Storage.Layout.JOURNALED);
+        TaskList tasks = new TaskList();
+        tasks.addTask(new Todo("task 1"));
+        storage.save(tasks);
+
+        Todo second = new Todo("task 2");
+        tasks.addTask(second);
+        storage.saveAdd(tasks, second);
+        tasks.mark(1);
+        storage.saveMark(tasks, 1);
+        tasks.deleteTask(0);
+        storage.saveDelete(tasks, 0);
+
+        assertTrue(Files.exists(tempDir.resolve("spark.txt.1.journal")), "Changes should go to the journal");
+
+        TaskList loaded = new Storage(file, Storage.Layout.JOURNALED).load();
+        assertEquals(1, loaded.getSize());
+        assertEquals("T | 1 | task 2", loaded.getTask(0).toSaveString());
+    }
+
+    @Test
+    public void load_corruptedJournal_throwsSparkException() throws Exception {
+        Path file = tempDir.resolve("spark.txt");
+        Files.writeString(tempDir.resolve("spark.txt.0.journal"), "MARK | 5\n");
+        assertThrows(SparkException.class, () -> new Storage(file, Storage.Layout.JOURNALED).load());
+    }
+
+    @Test
+    public void saveAdd_journalPastThreshold_compactsIntoSnapshot() throws Exception {
+        Path file = tempDir.resolve("spark.txt");
+        Storage storage = new Storage(file, Storage.Layout.JOURNALED);
+        storage.setCompactionThresholds(3, 1024);
+        TaskList tasks = new TaskList();
+
+        for (int i = 1; i <= 4; i++) {
+            Todo todo = new Todo("task " + i);
+            tasks.addTask(todo);
+            storage.saveAdd(tasks, todo);
+        }
+        storage.awaitCompaction();
+
+        assertFalse(Files.exists(tempDir.resolve("spark.txt.0.journal")), "Compacted journal should be removed");
+        assertTrue(Files.readString(file).contains("task 3"), "Snapshot should contain compacted tasks");
+
+        TaskList loaded = new Storage(file, Storage.Layout.JOURNALED).load();
+        assertEquals(4, loaded.getSize());
+        assertEquals("task 4", loaded.getTask(3).getDescription());
+    }
+
+    @Test
+    public void migrateToBinary_textFile_keepsTasksAndSwitchesFormat() throws Exception {
+        Path file = tempDir.resolve("spark.txt");
+        Storage storage = new Storage(file);
+        TaskList tasks = new TaskList();
+        tasks.addTask(new Todo("read book"));
+        tasks.addTask(new Deadline("return book", LocalDateTime.of(2025, 1, 25, 12, 0)));
+        tasks.addTask(new Event("meeting", "2pm", "4pm"));
+        tasks.mark(2);
+        storage.save(tasks);
+
+        assertTrue(storage.migrateToBinary());
+        assertTrue(BinaryTaskFormat.isBinary(file));
+        assertFalse(storage.migrateToBinary(), "Second migration should do nothing");
+
+        TaskList loaded = new Storage(file).load();
+        assertEquals(3, loaded.getSize());
+        for (int i = 0; i < tasks.getSize(); i++) {
+            assertEquals(tasks.getTask(i).toSaveString(), loaded.getTask(i).toSaveString());
+        }
+    }
+
+    @Test
+    public void load_truncatedBinaryFile_throwsSparkException() throws Exception {
+        Path file = tempDir.resolve("spark.txt");
+        TaskList tasks = new TaskList();
+        tasks.addTask(new Todo("read book"));
+        byte[] encoded = BinaryTaskFormat.encode(tasks, 0);
+        Files.write(file, Arrays.copyOf(encoded, encoded.length - 3));
+
+        assertThrows(SparkException.class, () -> new Storage(file).load());
+    }
+
+    @Test
+    public void load_binaryDeadlineOutOfRange_throwsSparkException() throws Exception {
+        Path file = tempDir.resolve("spark.txt");
+        TaskList tasks = new TaskList();
+        tasks.addTask(new Deadline("x", LocalDateTime.of(2025, 1, 25, 12, 0)));
+        ByteBuffer encoded = ByteBuffer.wrap(BinaryTaskFormat.encode(tasks, 0));
+        // Header (magic, version, generation, next ID, count), then type, done flag, ID and "x".
+        encoded.putLong(4 + 1 + 8 + 8 + 4 + 1 + 1 + 8 + 4 + 1, Long.MAX_VALUE);
+        Files.write(file, encoded.array());
+
+        SparkException e = assertThrows(SparkException.class, () -> new Storage(file).load());
+        assertEquals("Saved file was corrupted", e.getMessage());
+    }
+
+    @Test
+    public void migrateToBinary_shardedTextSegments_migratesOnce() throws Exception {
+        Path file = tempDir.resolve("spark.txt");
+        Files.writeString(file, "T | 0 | task 1\nT | 1 | task 2\n");
+
+        assertTrue(new Storage(file, Storage.Layout.SHARDED).migrateToBinary());
+        assertTrue(BinaryTaskFormat.isBinary(tempDir.resolve("spark.txt.segments").resolve("segment-1")));
+        assertFalse(new Storage(file, Storage.Layout.SHARDED).migrateToBinary());
+        TaskList loaded = new Storage(file, Storage.Layout.SHARDED).load();
+        assertEquals("T | 1 | task 2", loaded.getTask(1).toSaveString());
+    }
+
+    @Test
+    public void load_largeTextFile_decodesEveryLine() throws Exception {
+        Path file = tempDir.resolve("spark.txt");
+        StringBuilder sb = new StringBuilder();
+        int count = 300000;
+        for (int i = 0; i < count; i++) {
+            sb.append("T | ").append(i % 2).append(" | task ").append(i).append("\r\n");
+        }
+        Files.writeString(file, sb.toString());
+
+        TaskList loaded = new Storage(file).load();
+        assertEquals(count, loaded.getSize());
+        assertEquals("T | 0 | task 123456", loaded.getTask(123456).toSaveString());
+        assertEquals("T | 1 | task 299999", loaded.getTask(count - 1).toSaveString());
+    }
+
+    @Test
+    public void load_corruptedDeadlineDate_throwsSparkException() throws Exception {
+        Path file = tempDir.resolve("spark.txt");
+        Files.writeString(file, "D | 0 | return book | tomorrow\n");
+
+        assertThrows(SparkException.class, () -> new Storage(file).load());
+    }
+
+    @Test
+    public void load_corruptedLineInLargeFile_reportsLineNumber() throws Exception {
+        Path file = tempDir.resolve("spark.txt");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= 400000; i++) {
+            sb.append(i == 345678 ? "X | 0 | broken" : "T | 0 | task " + i).append("\n");
+        }
+        Files.writeString(file, sb.toString());
+
+        SparkException e = assertThrows(SparkException.class, () -> new Storage(file).load());
+        assertEquals("Unknown task type in save data: X (line 345678)", e.getMessage());
+    }
+
+    @Test
+    public void flush_writeBehind_writesQueuedChangesTogether() throws Exception {
+        Path file = tempDir.resolve("spark.txt");
+        Storage storage = new Storage(file, Storage.Layout.JOURNALED);
+        storage.setWriteBehind(true, 60000);
+        TaskList tasks = new TaskList();
+
+        for (int i = 1; i <= 3; i++) {
+            Todo todo = new Todo("task " + i);
+            tasks.addTask(todo);
+            storage.saveAdd(tasks, todo);
+        }
+        assertFalse(Files.exists(tempDir.resolve("spark.txt.0.journal")), "Changes should still be queued");
+
+        storage.flush();
+        assertEquals(3, new Storage(file, Storage.Layout.JOURNALED).load().getSize());
+    }
+
+    @Test
+    public void flush_writeBehindFails_throwsSparkException() throws Exception {
+        Path notAFolder = tempDir.resolve("data");
+        Files.writeString(notAFolder, "");
+        Storage storage = new Storage(notAFolder.resolve("spark.txt"), Storage.Layout.JOURNALED);
+        storage.setWriteBehind(true, 60000);
+        TaskList tasks = new TaskList();
+        Todo todo = new Todo("task 1");
+        tasks.addTask(todo);
+        storage.saveAdd(tasks, todo);
+
+        assertThrows(SparkException.class, storage::flush);
+    }
+
+    @Test
+    public void load_tornLastJournalRecord_dropsIt() throws Exception {
+        Path file = tempDir.resolve("spark.txt");
+        Files.writeString(tempDir.resolve("spark.txt.0.journal"), "ADD | T | 0 | task 1\nADD | T | 0 | ta");
+
+        Storage storage = new Storage(file, Storage.Layout.JOURNALED);
+        TaskList tasks = storage.load();
+        assertEquals(1, tasks.getSize());
+
+        Todo second = new Todo("task 2");
+        tasks.addTask(second);
+        storage.saveAdd(tasks, second);
+        assertEquals(2, new Storage(file, Storage.Layout.JOURNALED).load().getSize());
+    }
+
+    @Test
+    public void save_osBufferedDurability_replacesFileAtomically() throws Exception {
+        Path file = tempDir.resolve("spark.txt");
+        Storage storage = new Storage(file);
+        storage.setDurability(Storage.Durability.OS_BUFFERED, 0);
+        TaskList tasks = new TaskList();
+        tasks.addTask(new Todo("task 1"));
+        storage.save(tasks);
+
+        assertFalse(Files.exists(tempDir.resolve("spark.txt.tmp")), "Temporary file should be moved into place");
+        assertEquals(1, new Storage(file).load().getSize());
+    }
+
+    @Test
+    public void load_shardedChanges_keepsIndicesAcrossSegments() throws Exception {
+        Path file = tempDir.resolve("spark.txt");
+        Storage storage = new Storage(file, Storage.Layout.SHARDED);
+        TaskList tasks = new TaskList();
+        for (int i = 0; i < ShardedTaskFiles.SEGMENT_SIZE + 10; i++) {
+            tasks.addTask(new Todo("task " + i));
+        }
+        storage.save(tasks);
+
+        int index = ShardedTaskFiles.SEGMENT_SIZE + 5;
+        tasks.mark(index);
+        storage.saveMark(tasks, index);
+        tasks.deleteTask(0);
+        storage.saveDelete(tasks, 0);
+        Todo added = new Todo("added");
+        tasks.addTask(added);
+        storage.saveAdd(tasks, added);
+
+        assertFalse(Files.exists(file), "Sharded storage should not write the single save file");
+        TaskList loaded = new Storage(file, Storage.Layout.SHARDED).load();
+        assertEquals(tasks.getSize(), loaded.getSize());
+        assertEquals("T | 1 | task " + index, loaded.getTask(index - 1).toSaveString());
+        assertEquals("added", loaded.getTask(loaded.getSize() - 1).getDescription());
+    }
+
+    @Test
+    public void saveDelete_shardedWriteFails_catchesUpOnNextWrite() throws Exception {
+        Path file = tempDir.resolve("spark.txt");
+        TaskList saved = new TaskList();
+        for (int i = 0; i < ShardedTaskFiles.SEGMENT_SIZE + 10; i++) {
+            saved.addTask(new Todo("task " + i));
+        }
+        new Storage(file, Storage.Layout.SHARDED).save(saved);
+
+        Storage storage = new Storage(file, Storage.Layout.SHARDED);
+        TaskList tasks = storage.loadLazily(1);
+        Path folder = tempDir.resolve("spark.txt.segments");
+        for (int id = 0; id < 10; id++) {
+            Files.createDirectory(folder.resolve("segment-" + id + ".tmp"));
+        }
+        tasks.deleteTask(0);
+        assertThrows(SparkException.class, () -> storage.saveDelete(tasks, 0));
+        for (int id = 0; id < 10; id++) {
+            Files.delete(folder.resolve("segment-" + id + ".tmp"));
+        }
+
+        int index = ShardedTaskFiles.SEGMENT_SIZE + 5;
+        tasks.mark(index);
+        storage.saveMark(tasks, index);
+        Todo added = new Todo("added");
+        tasks.addTask(added);
+        storage.saveAdd(tasks, added);
+
+        TaskList loaded = new Storage(file, Storage.Layout.SHARDED).load();
+        assertEquals(ShardedTaskFiles.SEGMENT_SIZE + 10, loaded.getSize());
+        assertEquals("task 1", loaded.getTask(0).getDescription());
+        assertEquals("T | 1 | task " + (index + 1), loaded.getTask(index).toSaveString());
+        assertEquals("added", loaded.getTask(loaded.getSize() - 1).getDescription());
+        assertEquals("task 2", tasks.getTask(1).getDescription());
+    }
+
+    @Test
+    public void load_shardedSegmentMissingTasks_throwsSparkException() throws Exception {
+        Path file = tempDir.resolve("spark.txt");
+        TaskList tasks = new TaskList();
+        tasks.addTask(new Todo("task 1"));
+        new Storage(file, Storage.Layout.SHARDED).save(tasks);
+
+        Path manifest = tempDir.resolve("spark.txt.segments").resolve("manifest");
+        Files.writeString(manifest, Files.readString(manifest).replace("0 1", "0 2"));
+        assertThrows(SparkException.class, () -> new Storage(file, Storage.Layout.SHARDED).load());
+    }
+
+    @Test
+    public void load_shardedWithOldSaveFile_importsIt() throws Exception {
+        Path file = tempDir.resolve("spark.txt");
+        Files.writeString(file, "T | 0 | task 1\n");
+        Files.writeString(tempDir.resolve("spark.txt.0.journal"), "ADD | T | 0 | task 2\n");
+
+        assertEquals(2, new Storage(file, Storage.Layout.SHARDED).loadLazily(1).getSize());
+        assertTrue(Files.exists(tempDir.resolve("spark.txt.segments").resolve("manifest")));
+        assertEquals(2, new Storage(file, Storage.Layout.SHARDED).load().getSize());
+    }
+
+    @Test
+    public void load_journaledAfterSharded_importsSegmentsAndDeletesThem() throws Exception {
+        Path file = tempDir.resolve("spark.txt");
+        Files.writeString(file, "T | 0 | task 1\n");
+        Files.writeString(tempDir.resolve("spark.txt.0.journal"), "ADD | T | 0 | task 2\n");
+        Storage sharded = new Storage(file, Storage.Layout.SHARDED);
+        TaskList tasks = sharded.load();
+        Task added = new Todo("task 3");
+        tasks.addTask(added);
+        sharded.saveAdd(tasks, added);
+
+        Storage journaled = new Storage(file, Storage.Layout.JOURNALED);
+        TaskList loaded = journaled.load();
+        assertEquals(3, loaded.getSize());
+        assertEquals("task 3", loaded.getTask(2).getDescription());
+        assertFalse(Files.exists(tempDir.resolve("spark.txt.segments")));
+        assertFalse(Files.exists(tempDir.resolve("spark.txt.0.journal")));
+
+        loaded.deleteTask(0);
+        journaled.saveDelete(loaded, 0);
+        assertEquals(2, new Storage(file, Storage.Layout.JOURNALED).load().getSize());
+    }
+
+    @Test
+    public void load_savedIds_keepsIdsAndDoesNotReuseDeletedOnes() throws Exception {
+        for (Storage.Layout layout : Storage.Layout.values()) {
+            for (Storage.Format format : Storage.Format.values()) {
+                Path file = tempDir.resolve(layout + "-" + format + ".txt");
+                Storage storage = new Storage(file, layout);
+                storage.setFormat(format);
+                TaskList tasks = new TaskList();
+                tasks.addTask(new Todo("task 1"));
+                tasks.addTask(new Todo("task 2"));
+                tasks.addTask(new Todo("task 3"));
+                storage.save(tasks);
+                tasks.deleteTask(0);
+                storage.saveDelete(tasks, 0);
+                tasks.deleteTask(1);
+                storage.saveDelete(tasks, 1);
+
+                TaskList loaded = new Storage(file, layout).load();
+                assertEquals(2, loaded.getTask(0).getId(), layout + " " + format);
+                assertEquals(4, loaded.getNextId(), layout + " " + format);
+            }
+        }
+    }
+
+    @Test
+    public void saveBulkChanges_everyLayout_reloadsSameTasks() throws SparkException {
+        for (Storage.Layout layout : Storage.Layout.values()) {
+            Path file = tempDir.resolve("bulk-" + layout + ".txt");
+            TaskList saved = new TaskList();
+            for (int i = 0; i < ShardedTaskFiles.SEGMENT_SIZE * 3; i++) {
+                saved.addTask(new Todo("task " + i));
+            }
+            new Storage(file, layout).save(saved);
+            // In the sharded layout, only one segment at a time is kept in memory while changing.
+            Storage storage = new Storage(file, layout);
+            TaskList tasks = storage.loadLazily(1);
+
+            int[] marked = Parser.parseIndices("1-10,5000-9000", tasks.getSize(), "format");
+            tasks.markAll(marked);
+            storage.saveMarkAll(tasks, marked);
+            int[] deleted = Parser.parseIndices("3,4097-8192,12000-12288", tasks.getSize(), "format");
+            List<Task> removed = tasks.deleteAll(deleted);
+            storage.saveDeleteAll(tasks, deleted);
+            int[] reinserted = Parser.parseIndices("4,4100-4200,8000-8050", tasks.getSize() + 153, "format");
+            tasks.insertAll(reinserted, removed.subList(0, reinserted.length));
+            storage.saveInsertAll(tasks, reinserted);
+
+            TaskList loaded = new Storage(file, layout).load();
+            assertEquals(tasks.getSize(), loaded.getSize(), layout.toString());
+            for (int i = 0; i < tasks.getSize(); i++) {
+                assertEquals(tasks.getTask(i).toString(), loaded.getTask(i).toString(), layout.toString());
+            }
+        }
+    }
+
+    @Test
+    public void formatIndices_runs_writesRanges() throws SparkException {
+        int[] indices = {0, 1, 2, 4, 7, 8};
+
+        assertEquals("0-2,4,7-8", Storage.formatIndices(indices));
+        assertArrayEquals(indices, Storage.parseIndices("0-2,4,7-8"));
+        assertThrows(SparkException.class, () -> Storage.parseIndices("4,2"));
+    }
+
+    @Test
+    public void checkpoint_deferredChanges_writesThemOnlyAtCheckpoint() throws SparkException {
+        Path file = tempDir.resolve("spark.txt");
+        for (Storage.Layout layout : Storage.Layout.values()) {
+            Storage storage = new Storage(file, layout);
+            TaskList tasks = storage.load();
+            int before = tasks.getSize();
+            storage.setDeferred(true);
+            Task task = new Todo("read book " + layout);
+            tasks.addTask(task);
+            storage.saveAdd(tasks, task);
+            tasks.mark(tasks.getSize() - 1);
+            storage.saveMark(tasks, tasks.getSize() - 1);
+
+            assertEquals(before, new Storage(file, layout).load().getSize(), layout.toString());
+            storage.checkpoint(tasks);
+            storage.setDeferred(false);
+
+            TaskList loaded = new Storage(file, layout).load();
+            assertEquals(before + 1, loaded.getSize(), layout.toString());
+            assertTrue(loaded.getTask(before).isDone(), layout.toString());
+        }
+    }
+
+    @Test
+    public void checkpoint_deferredChangesToPagedList_keepsChangedPagesUntilSaved() throws SparkException {
+        Path file = tempDir.resolve("spark.txt");
+        TaskList saved = new TaskList();
+        for (int i = 0; i < ShardedTaskFiles.SEGMENT_SIZE * 3; i++) {
+            saved.addTask(new Todo("task " + i));
+        }
+        new Storage(file, Storage.Layout.SHARDED).save(saved);
+
+        Storage storage = new Storage(file, Storage.Layout.SHARDED);
+        PagedTaskList tasks = (PagedTaskList) storage.loadLazily(1);
+        storage.setDeferred(true);
+        tasks.mark(0);
+        storage.saveMark(tasks, 0);
+        tasks.deleteTask(ShardedTaskFiles.SEGMENT_SIZE);
+        storage.saveDelete(tasks, ShardedTaskFiles.SEGMENT_SIZE);
+        assertEquals("task " + (ShardedTaskFiles.SEGMENT_SIZE * 3 - 1),
+                tasks.getTask(tasks.getSize() - 1).getDescription());
+        assertEquals(3, tasks.getResidentPageCount(), "Changed pages should stay in memory");
+        assertTrue(tasks.getTask(0).isDone());
+
+        storage.checkpoint(tasks);
+        storage.setDeferred(false);
+        assertEquals(1, tasks.getResidentPageCount(), "Saved pages should be dropped again");
+
+        TaskList loaded = new Storage(file, Storage.Layout.SHARDED).load();
+        assertEquals(ShardedTaskFiles.SEGMENT_SIZE * 3 - 1, loaded.getSize());
+        assertTrue(loaded.getTask(0).isDone());
+        assertEquals("task " + (ShardedTaskFiles.SEGMENT_SIZE + 1),
+                loaded.getTask(ShardedTaskFiles.SEGMENT_SIZE).getDescription());
+    }
+}
@@ -0,0 +1,153 @@
+package spark;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TaskHistoryTest {
+    @TempDir
+    Path tempDir;
+
+    private static List<String> describe(TaskList tasks) {
+        List<String> lines = new ArrayList<>();
+        for (Task task : tasks.getAll()) {
+            lines.add("#" + task.getId() + " " + task);
+        }
+        return lines;
+    }
+
+    private static long[] ids(TaskList tasks) {
+        return tasks.getAll().stream().mapToLong(Task::getId).toArray();
+    }
+
+    @Test
+    public void undo_everyKindOfChange_restoresListAndSavedFile() throws SparkException {
+        for (Storage.Layout layout : Storage.Layout.values()) {
+            Path file = tempDir.resolve("spark-" + layout + ".txt");
+            Storage storage = new Storage(file, layout);
+            TaskList tasks = storage.loadLazily(1);
+            TaskHistory history = new TaskHistory(10);
+
+            for (Task task : List.of(new Todo("read book"),
+                    new Deadline("return book", LocalDateTime.of(2024, 3, 2, 18, 0)),
+                    new Deadline("submit report", LocalDateTime.of(2024, 1, 15, 9, 30)))) {
+                tasks.addTask(task);
+                storage.saveAdd(tasks, task);
+                history.recordAdd(tasks, task);
+            }
+            List<String> added = describe(tasks);
+
+            Task marked = tasks.mark(1);
+            storage.saveMark(tasks, 1);
+            history.recordDone(1, marked, false);
+            long[] previousOrder = ids(tasks);
+            tasks.sortByDateTime();
+            storage.saveSort(tasks);
+            history.recordSort(previousOrder);
+            Task deleted = tasks.deleteTask(1);
+            storage.saveDelete(tasks, 1);
+            history.recordDelete(1, deleted);
+            List<String> changed = describe(tasks);
+
+            history.undo(tasks, storage);
+            history.undo(tasks, storage);
+            history.undo(tasks, storage);
+            assertEquals(added, describe(tasks), layout.toString());
+            assertEquals(added, describe(new Storage(file, layout).load()), layout.toString());
+
+            history.redo(tasks, storage);
+            history.redo(tasks, storage);
+            history.redo(tasks, storage);
+            assertEquals(changed, describe(tasks), layout.toString());
+            assertEquals(changed, describe(new Storage(file, layout).load()), layout.toString());
+        }
+    }
+
+    @Test
+    public void undo_pastLimit_throws() throws SparkException {
+        Storage storage = new Storage(tempDir.resolve("spark.txt"));
+        TaskList tasks = new TaskList();
+        TaskHistory history = new TaskHistory(2);
+        for (int i = 0; i < 3; i++) {
+            Task task = new Todo("task " + i);
+            tasks.addTask(task);
+            storage.saveAdd(tasks, task);
+            history.recordAdd(tasks, task);
+        }
+
+        assertEquals("add [T][ ] task 2", history.undo(tasks, storage));
+        history.undo(tasks, storage);
+        assertThrows(SparkException.class, () -> history.undo(tasks, storage));
+        assertEquals(1, tasks.getSize());
+        assertEquals("add [T][ ] task 1", history.redo(tasks, storage));
+    }
+
+    @Test
+    public void recordAdd_afterUndo_forgetsRedo() throws SparkException {
+        Storage storage = new Storage(tempDir.resolve("spark.txt"));
+        TaskList tasks = new TaskList();
+        TaskHistory history = new TaskHistory(5);
+        Task first = new Todo("first");
+        tasks.addTask(first);
+        history.recordAdd(tasks, first);
+        history.undo(tasks, storage);
+
+        Task second = new Todo("second");
+        tasks.addTask(second);
+        history.recordAdd(tasks, second);
+
+        assertThrows(SparkException.class, () -> history.redo(tasks, storage));
+    }
+
+    @Test
+    public void insertTask_middleOfIndexedList_keepsIdsAndQueries() throws SparkException {
+        for (TaskList tasks : List.of(new TaskList(), new ColumnarTaskList(), new ConcurrentTaskList())) {
+            for (int i = 0; i < 5; i++) {
+                tasks.addTask(new Todo("book " + i));
+            }
+            tasks.find("book");
+            Task removed = tasks.deleteTask(2);
+
+            tasks.insertTask(2, removed);
+
+            assertEquals(removed.getId(), tasks.getTask(2).getId());
+            assertEquals(2, tasks.indexOfId(removed.getId()));
+            assertEquals("book 2", tasks.find("book").get(2).getDescription());
+            assertThrows(SparkException.class, () -> tasks.insertTask(7, new Todo("too far")));
+        }
+    }
+
+    @Test
+    public void undo_bulkChanges_restoresTasks() throws SparkException {
+        Storage storage = new Storage(tempDir.resolve("spark.txt"), Storage.Layout.JOURNALED);
+        TaskList tasks = new TaskList();
+        for (int i = 0; i < 10; i++) {
+            tasks.addTask(new Todo("task " + i));
+        }
+        tasks.mark(2);
+        storage.save(tasks);
+        List<String> before = describe(tasks);
+        TaskHistory history = new TaskHistory(5);
+
+        int[] marked = {1, 2, 3};
+        boolean[] wereDone = {false, true, false};
+        tasks.markAll(marked);
+        storage.saveMarkAll(tasks, marked);
+        history.recordDoneAll(marked, true, wereDone);
+        int[] deleted = {0, 5, 6, 9};
+        history.recordDeleteAll(deleted, tasks.deleteAll(deleted));
+        storage.saveDeleteAll(tasks, deleted);
+
+        assertEquals("delete 4 tasks", history.undo(tasks, storage));
+        assertEquals("mark 3 tasks", history.undo(tasks, storage));
+        assertEquals(before, describe(tasks));
+        assertEquals(before, describe(new Storage(tempDir.resolve("spark.txt"), Storage.Layout.JOURNALED).load()));
+    }
+}
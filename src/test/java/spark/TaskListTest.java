@@ -1,7 +1,9 @@
 package spark;
 
 import org.junit.jupiter.api.Test;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -136,6 +138,177 @@ public class TaskListTest {
         TaskList list2 = new TaskList(list1.getSize() > 0 ? List.of(list1.getTask(0), list1.getTask(1)) : List.of());
         assertEquals(2, list2.getSize());
     }
-}
 
+    @Test
+    public void find_afterAddAndDelete_keepsListOrderAndSubstringMatches() throws SparkException {
+        TaskList list = new TaskList();
+        list.addTask(new Todo("return book"));
+        list.addTask(new Todo("buy notebook"));
+        assertEquals(2, list.find("ook").size(), "Substrings of words should match");
+
+        list.addTask(new Todo("Bookmark page"));
+        list.deleteTask(0);
+        list.addTask(new Todo("cook dinner"));
+
+        List<Task> matches = list.find("ook");
+        assertEquals(3, matches.size());
+        assertEquals("buy notebook", matches.get(0).getDescription());
+        assertEquals("Bookmark page", matches.get(1).getDescription());
+        assertEquals("cook dinner", matches.get(2).getDescription());
+    }
+
+    @Test
+    public void find_keywordAcrossWords_matchesLikeScan() {
+        TaskList list = new TaskList();
+        list.addTask(new Todo("return book"));
+        list.addTask(new Todo("book return"));
+
+        List<Task> matches = list.find("n bo");
+        assertEquals(1, matches.size());
+        assertEquals("return book", matches.get(0).getDescription());
+    }
+
+    @Test
+    public void find_shortKeywordAndRemovedWord_matchesLikeScan() throws SparkException {
+        TaskList list = new TaskList();
+        list.addTask(new Todo("go jogging"));
+        list.addTask(new Todo("read book"));
+        assertEquals(2, list.find("o").size(), "Keywords shorter than a trigram should still match");
+        assertEquals(1, list.find("jog").size());
+
+        list.deleteTask(0);
+        assertEquals(0, list.find("jog").size(), "Words of deleted tasks should no longer match");
+        assertEquals(1, list.find("boo").size());
+    }
+
+    @Test
+    public void sortByDateTime_tiesAndUndatedTasks_keepListOrder() throws SparkException {
+        TaskList list = new TaskList();
+        LocalDateTime early = LocalDateTime.of(2025, 1, 1, 9, 0);
+        LocalDateTime late = LocalDateTime.of(2025, 3, 1, 9, 0);
+        list.addTask(new Todo("todo 1"));
+        list.addTask(new Deadline("late", late));
+        list.addTask(new Deadline("early 1", early));
+        assertEquals(2, list.findDueBefore(late.plusMinutes(1)).size(), "Index should be built from the list");
+        list.addTask(new Deadline("early 2", early));
+        list.addTask(new Todo("todo 2"));
 
+        assertTrue(list.sortByDateTime());
+        assertEquals("early 1", list.getTask(0).getDescription());
+        assertEquals("early 2", list.getTask(1).getDescription());
+        assertEquals("late", list.getTask(2).getDescription());
+        assertEquals("todo 1", list.getTask(3).getDescription());
+        assertEquals("todo 2", list.getTask(4).getDescription());
+        assertFalse(list.sortByDateTime(), "Sorting a sorted list should not change it");
+    }
+
+    @Test
+    public void findDueBefore_afterDelete_returnsEarlierTasksOnly() throws SparkException {
+        TaskList list = new TaskList();
+        list.addTask(new Deadline("a", LocalDateTime.of(2025, 1, 3, 0, 0)));
+        list.addTask(new Deadline("b", LocalDateTime.of(2025, 1, 1, 0, 0)));
+        list.addTask(new Deadline("c", LocalDateTime.of(2025, 1, 2, 0, 0)));
+        list.findDueBefore(LocalDateTime.of(2025, 1, 1, 0, 0));
+        list.deleteTask(1);
+
+        List<Task> due = list.findDueBefore(LocalDateTime.of(2025, 1, 3, 0, 0));
+        assertEquals(1, due.size());
+        assertEquals("c", due.get(0).getDescription());
+    }
+
+    @Test
+    public void indexOfId_afterDeleteAndSort_findsCurrentPosition() throws SparkException {
+        TaskList list = new TaskList();
+        list.addTask(new Todo("undated"));
+        list.addTask(new Deadline("late", LocalDateTime.of(2025, 3, 1, 0, 0)));
+        Deadline early = new Deadline("early", LocalDateTime.of(2025, 1, 1, 0, 0));
+        list.addTask(early);
+        long id = early.getId();
+
+        list.deleteTask(0);
+        assertEquals(1, list.indexOfId(id));
+        list.sortByDateTime();
+        assertEquals(0, list.indexOfId(id));
+        assertSame(early, list.getTaskById(id));
+        assertThrows(SparkException.class, () -> list.indexOfId(1));
+    }
+
+    @Test
+    public void addTask_afterDeletingNewestTask_doesNotReuseId() throws SparkException {
+        TaskList list = new TaskList();
+        list.addTask(new Todo("first"));
+        list.addTask(new Todo("second"));
+        list.deleteTask(1);
+
+        Todo third = new Todo("third");
+        list.addTask(third);
+        assertEquals(3, third.getId());
+    }
+
+    @Test
+    public void deleteAll_fewAndMany_matchesDeletingOneByOne() throws SparkException {
+        for (int[] indices : List.of(new int[] {3, 250}, IntStream.range(100, 400).toArray())) {
+            TaskList bulk = new TaskList();
+            TaskList single = new TaskList();
+            for (int i = 0; i < 500; i++) {
+                bulk.addTask(new Todo("task " + i));
+                single.addTask(new Todo("task " + i));
+            }
+            bulk.find("task");
+
+            List<Task> removed = bulk.deleteAll(indices);
+            for (int i = indices.length - 1; i >= 0; i--) {
+                single.deleteTask(indices[i]);
+            }
+
+            assertEquals(indices.length, removed.size());
+            assertEquals("task " + indices[0], removed.get(0).getDescription());
+            assertEquals(single.getSize(), bulk.getSize());
+            for (int i = 0; i < single.getSize(); i++) {
+                assertEquals(single.getTask(i).getDescription(), bulk.getTask(i).getDescription());
+            }
+            assertEquals(single.getSize(), bulk.find("task").size());
+            assertEquals(bulk.getSize() - 1, bulk.indexOfId(bulk.getTask(bulk.getSize() - 1).getId()));
+        }
+    }
+
+    @Test
+    public void insertAll_afterDeleteAll_matchesInsertingOneByOne() throws SparkException {
+        int[] indices = {0, 3, 4, 5, 250, 299};
+        for (TaskList bulk : List.of(new TaskList(), new ColumnarTaskList())) {
+            TaskList single = new TaskList();
+            for (int i = 0; i < 300; i++) {
+                bulk.addTask(new Todo("task " + i));
+                single.addTask(new Todo("task " + i));
+            }
+            bulk.find("task");
+
+            List<Task> removed = bulk.deleteAll(indices);
+            List<Task> singleRemoved = single.deleteAll(indices);
+            bulk.insertAll(indices, removed);
+            for (int i = 0; i < indices.length; i++) {
+                single.insertTask(indices[i], singleRemoved.get(i));
+            }
+
+            assertEquals(300, bulk.getSize());
+            for (int i = 0; i < single.getSize(); i++) {
+                assertEquals(single.getTask(i).getDescription(), bulk.getTask(i).getDescription());
+                assertEquals(single.getTask(i).getId(), bulk.getTask(i).getId());
+            }
+            assertEquals(300, bulk.find("task").size());
+            assertEquals(250, bulk.indexOfId(bulk.getTask(250).getId()));
+            assertThrows(SparkException.class, () -> bulk.insertAll(new int[] {302}, List.of(new Todo("x"))));
+            assertEquals(300, bulk.getSize());
+        }
+    }
+
+    @Test
+    public void markAll_indexOutOfRange_changesNothing() {
+        TaskList tasks = new TaskList();
+        tasks.addTask(new Todo("read book"));
+        tasks.addTask(new Todo("return book"));
+
+        assertThrows(SparkException.class, () -> tasks.markAll(new int[] {0, 2}));
+        assertFalse(tasks.getTask(0).isDone());
+    }
+}
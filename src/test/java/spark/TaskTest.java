@@ -1,6 +1,10 @@
 package spark;
 
 import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class TaskTest {
@@ -70,4 +74,21 @@ public class TaskTest {
         Task task = new Task("buy groceries");
         assertNull(task.getDateTime());
     }
+
+    @Test
+    public void encode_textEncoder_matchesSaveString() {
+        TaskList tasks = new TaskList();
+        tasks.addTask(new Todo("buy groceries"));
+        tasks.addTask(new Deadline("return book", LocalDateTime.of(2025, 1, 25, 12, 0)));
+        tasks.addTask(new Event("caf\u00e9 meetup \uD83D\uDE00", "2pm", "4pm"));
+        tasks.getTask(1).markAsDone();
+
+        StringBuilder expected = new StringBuilder("# next-id 4").append(System.lineSeparator());
+        for (int i = 0; i < tasks.getSize(); i++) {
+            expected.append("#").append(i + 1).append(" | ")
+                    .append(tasks.getTask(i).toSaveString()).append(System.lineSeparator());
+        }
+        assertEquals(expected.toString(),
+                new String(TextTaskFormat.encode(tasks, 0), StandardCharsets.UTF_8));
+    }
 }
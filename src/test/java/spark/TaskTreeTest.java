@@ -0,0 +1,76 @@
+package spark;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TaskTreeTest {
+    @Test
+    public void insertAndRemove_randomPositions_matchesArrayList() {
+        Random random = new Random(42);
+        List<Task> expected = new ArrayList<>();
+        TaskTree tree = TaskTree.empty();
+
+        for (int i = 0; i < 2000; i++) {
+            if (expected.isEmpty() || random.nextInt(3) > 0) {
+                int index = random.nextInt(expected.size() + 1);
+                Task task = new Todo("task " + i);
+                expected.add(index, task);
+                tree = tree.insert(index, task);
+            } else {
+                int index = random.nextInt(expected.size());
+                expected.remove(index);
+                tree = tree.remove(index);
+            }
+        }
+
+        assertEquals(expected.size(), tree.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i), tree.get(i));
+        }
+        assertEquals(expected, tree.toList());
+    }
+
+    @Test
+    public void remove_oldTree_isUnchanged() {
+        Todo first = new Todo("first");
+        Todo second = new Todo("second");
+        TaskTree before = TaskTree.of(List.of(first, second));
+
+        TaskTree after = before.remove(0);
+
+        assertEquals(2, before.size());
+        assertSame(first, before.get(0));
+        assertSame(second, after.get(0));
+    }
+
+    @Test
+    public void get_outOfRange_throwsIndexOutOfBoundsException() {
+        TaskTree tree = TaskTree.of(List.of(new Todo("only")));
+        assertThrows(IndexOutOfBoundsException.class, () -> tree.get(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> tree.remove(-1));
+    }
+
+    @Test
+    public void set_middleTask_leavesOldTreeUnchanged() {
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            tasks.add(new Todo("task " + i));
+        }
+        TaskTree tree = TaskTree.of(tasks);
+        Task replacement = new Todo("replacement");
+
+        TaskTree changed = tree.set(50, replacement);
+
+        assertSame(replacement, changed.get(50));
+        assertSame(tasks.get(50), tree.get(50));
+        assertEquals(tasks.get(51), changed.get(51));
+        assertThrows(IndexOutOfBoundsException.class, () -> tree.set(100, replacement));
+    }
+}